@@ -0,0 +1,311 @@
+package bench;
+
+import java.lang.Double;
+import java.lang.Integer;
+import java.lang.Long;
+import java.lang.RuntimeException;
+import java.lang.String;
+import java.lang.System;
+import java.lang.Thread;
+import java.text.DecimalFormat;
+
+import dmc.DMC;
+import dmc.EngineStats;
+import graphs.HistogramData;
+import graphs.Phi0EstimateData;
+
+/**
+ * This class checks that the iterations of a simulation that has settled
+ * allocate (next to) nothing, so allocation that creeps back into the
+ * engine is caught.  For each potential and each set of accumulators it
+ * runs a simulation for a warmup (long enough for the JIT to compile the
+ * loop and for every buffer to reach its size), then for a fixed number
+ * of iterations, counting the bytes allocated by the thread iterating,
+ * and fails if the bytes per iteration are over the budget.
+ * <p>
+ * A buffer still growing while the iterations are counted, or a loop not
+ * yet compiled, would be taken for a regression.  So the population's
+ * high-water mark (the walkers branching had to make new, and the
+ * capacity of the walkers) and the ranges of the accumulators are
+ * watched, and if any of them changed over the iterations counted, or
+ * they were over the budget, those iterations are taken as more warmup
+ * and counted again, a few times at most.  A mode still over the budget
+ * with nothing growing fails; one whose buffers never stopped growing is
+ * reported as unsettled, as its warmup was too short.
+ * <p>
+ * The accumulator modes are:
+ * <ul>
+ * <li>none, the bare engine;
+ * <li>histogram, a HistogramData binning every population;
+ * <li>phi0, a Phi0EstimateData binning populations a correlation time
+ *     apart;
+ * <li>phi0-every, a Phi0EstimateData binning every population;
+ * <li>all, a HistogramData and a thinning Phi0EstimateData, as the GUI
+ *     has them.
+ * </ul>
+ * Usage:
+ * <pre>
+ *     java bench.AllocationGate [-walkers N] [-warmup N] [-iterations N]
+ *         [-budget BYTES]
+ * </pre>
+ * It exits with 1 if any mode is over the budget, and 2 if allocation
+ * cannot be measured or any mode has not settled.
+ */
+public class AllocationGate
+{
+    /**
+     * The default number of walkers.
+     */
+    public final static int DEFAULT_WALKERS = 1000;
+
+    /**
+     * The default number of iterations of the warmup.
+     */
+    public final static int DEFAULT_WARMUP = 20000;
+
+    /**
+     * The default number of iterations measured.
+     */
+    public final static int DEFAULT_ITERATIONS = 20000;
+
+    /**
+     * The default budget, in bytes per iteration.  It leaves room for a
+     * buffer growing now and then as the population reaches a new high,
+     * but not for anything allocated every iteration, or for every walker.
+     */
+    public final static double DEFAULT_BUDGET = 8.0;
+
+    /**
+     * The number of times the iterations are counted again when the
+     * buffers grew while they were counted.
+     */
+    private final static int MAX_RETRIES = 4;
+
+    /**
+     * The potentials checked.
+     */
+    private final static String[] POTENTIALS = { 
+	Simulations.LINEAR, Simulations.SHO 
+    };
+
+    /**
+     * The accumulator modes checked.
+     */
+    private final static String[] MODES = {
+	"none", "histogram", "phi0", "phi0-every", "all"
+    };
+
+    /**
+     * A simulation with the accumulators of a mode, and what was last
+     * seen of the sizes its buffers grow to.
+     */
+    public static class Gauged
+    {
+	/**
+	 * The simulation.
+	 */
+	public DMC simulation;
+
+	/**
+	 * The histogram, if the mode has one.
+	 */
+	public HistogramData histogram;
+
+	/**
+	 * The Phi_0 estimate, if the mode has one.
+	 */
+	public Phi0EstimateData phi0;
+
+	/**
+	 * The number of walkers made last seen.
+	 */
+	private long made = -1;
+
+	/**
+	 * The capacity of the walkers last seen.
+	 */
+	private int capacity = -1;
+
+	/**
+	 * The ranges of the accumulators last seen.
+	 */
+	private double[] ranges = new double[6];
+
+	/**
+	 * Makes a simulation with the accumulators of a mode.
+	 *
+	 * @param potential The potential.
+	 * @param mode The accumulator mode.
+	 * @param numWalkers The number of walkers.
+	 */
+	public Gauged(String potential, String mode, int numWalkers)
+	{
+	    simulation = Simulations.create(potential, numWalkers);
+	    if (mode.equals("histogram") || mode.equals("all")) {
+		histogram = new HistogramData(DMC.DEFAULT_X_MIN,
+					      DMC.DEFAULT_X_MAX, 200);
+		simulation.addAccumulator(histogram);
+	    }
+	    if (mode.startsWith("phi0") || mode.equals("all")) {
+		phi0 = new Phi0EstimateData(DMC.DEFAULT_X_MIN,
+					    DMC.DEFAULT_X_MAX);
+		phi0.thinning = !mode.equals("phi0-every");
+		simulation.addAccumulator(phi0);
+	    }
+	}
+
+	/**
+	 * Tells whether the buffers grew since this was last called (or
+	 * whether this is the first call).  It does not allocate.
+	 *
+	 * @return whether they grew
+	 */
+	public boolean grew()
+	{
+	    boolean grew = false;
+	    long m = simulation.stats.walkersMade;
+	    int c = simulation.walkers.capacity();
+	    if (m != made || c != capacity) {
+		made = m;
+		capacity = c;
+		grew = true;
+	    }
+	    if (histogram != null)
+		grew |= see(0, histogram.xMin, histogram.xMax, 
+			    histogram.numBins);
+	    if (phi0 != null)
+		grew |= see(3, phi0.xMin, phi0.xMax, phi0.numBins);
+	    return grew;
+	}
+
+	/**
+	 * Records the range of an accumulator.
+	 *
+	 * @param i Where in the ranges it goes.
+	 * @param xMin The minimum x value.
+	 * @param xMax The maximum x value.
+	 * @param numBins The number of bins.
+	 * @return whether it changed
+	 */
+	private boolean see(int i, double xMin, double xMax, int numBins)
+	{
+	    boolean changed = ranges[i] != xMin || ranges[i + 1] != xMax 
+		|| ranges[i + 2] != numBins;
+	    ranges[i] = xMin;
+	    ranges[i + 1] = xMax;
+	    ranges[i + 2] = numBins;
+	    return changed;
+	}
+    }
+
+    /**
+     * Measures the bytes allocated per iteration, once warmed up.  If the
+     * buffers grew while the iterations were counted, or they were over
+     * the budget, they are counted again, up to MAX_RETRIES times.
+     *
+     * @param g The simulation.
+     * @param warmup The number of iterations to warm up for.
+     * @param iterations The number of iterations to measure.
+     * @param budget The budget, in bytes per iteration.
+     * @return the bytes per iteration of the last count in which nothing
+     * grew, or NaN if the buffers never stopped growing
+     */
+    public static double measure(Gauged g, int warmup, int iterations,
+				 double budget)
+    {
+	long thread = Thread.currentThread().getId();
+	for (int i = 0; i < warmup; i++)
+	    g.simulation.Iterate();
+	double settled = Double.NaN;
+	for (int tries = 0; tries <= MAX_RETRIES; tries++) {
+	    g.grew();
+	    // Reading the counter may itself allocate; that is taken off:
+	    long a0 = EngineStats.allocatedBytes(thread);
+	    long a1 = EngineStats.allocatedBytes(thread);
+	    for (int i = 0; i < iterations; i++)
+		g.simulation.Iterate();
+	    long a2 = EngineStats.allocatedBytes(thread);
+	    if (!g.grew()) {
+		settled = (double) ((a2 - a1) - (a1 - a0)) / iterations;
+		if (settled <= budget)
+		    break;
+	    }
+	}
+	return settled;
+    }
+
+    /**
+     * Parses the options and checks every mode.
+     *
+     * @param args The options.
+     */
+    public static void main(String[] args)
+    {
+	int walkers = DEFAULT_WALKERS;
+	int warmup = DEFAULT_WARMUP;
+	int iterations = DEFAULT_ITERATIONS;
+	double budget = DEFAULT_BUDGET;
+	try {
+	    for (int i = 0; i < args.length; i += 2) {
+		String value = args[i + 1];
+		if (args[i].equals("-walkers"))
+		    walkers = Integer.parseInt(value);
+		else if (args[i].equals("-warmup"))
+		    warmup = Integer.parseInt(value);
+		else if (args[i].equals("-iterations"))
+		    iterations = Integer.parseInt(value);
+		else if (args[i].equals("-budget"))
+		    budget = Double.parseDouble(value);
+		else
+		    throw new IllegalArgumentException(args[i]);
+	    }
+	}
+	catch (RuntimeException e) {
+	    System.err.println("usage: java bench.AllocationGate [-walkers N]"
+			       + " [-warmup N] [-iterations N]"
+			       + " [-budget BYTES]");
+	    System.exit(2);
+	}
+	if (EngineStats.allocatedBytes(Thread.currentThread().getId()) < 0) {
+	    System.err.println("This JVM cannot count the bytes a thread"
+			       + " allocates.");
+	    System.exit(2);
+	}
+
+	DecimalFormat f = new DecimalFormat("0.0");
+	int over = 0;
+	int unsettled = 0;
+	System.out.println("Budget: " + budget + " bytes per iteration, " 
+			   + walkers + " walkers");
+	for (int p = 0; p < POTENTIALS.length; p++)
+	    for (int m = 0; m < MODES.length; m++) {
+		double b = measure(new Gauged(POTENTIALS[p], MODES[m], walkers),
+				   warmup, iterations, budget);
+		String name = POTENTIALS[p] + "/" + MODES[m] + ": ";
+		if (Double.isNaN(b)) {
+		    unsettled++;
+		    System.out.println("  ??    " + name + "still growing");
+		    continue;
+		}
+		boolean ok = b <= budget;
+		if (!ok)
+		    over++;
+		System.out.println((ok ? "  ok    " : "  OVER  ") + name
+				   + f.format(b) + " bytes per iteration");
+	    }
+	if (over > 0) {
+	    System.out.println(over + " over the budget.");
+	    if (warmup < DEFAULT_WARMUP)
+		System.out.println("The warmup is shorter than the default of "
+				   + DEFAULT_WARMUP + " iterations, which"
+				   + " may be too short for the JIT to"
+				   + " compile every path.");
+	    System.exit(1);
+	}
+	if (unsettled > 0) {
+	    System.out.println(unsettled + " still growing after the"
+			       + " warmup; try a longer -warmup.");
+	    System.exit(2);
+	}
+    }
+}
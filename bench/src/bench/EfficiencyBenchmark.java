@@ -0,0 +1,292 @@
+package bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.Double;
+import java.lang.IllegalArgumentException;
+import java.lang.Integer;
+import java.lang.Long;
+import java.lang.Math;
+import java.lang.RuntimeException;
+import java.lang.String;
+import java.lang.StringBuffer;
+import java.lang.System;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DecimalFormat;
+
+import dmc.DMC;
+import dmc.DMC_SHO;
+import dmc.EnergyEstimator;
+
+/**
+ * This class compares settings of the simulation by how good an E0
+ * estimate they reach per second of CPU time, rather than by how fast
+ * they step walkers.  Each setting (number of walkers, time step and
+ * population feedback) runs the harmonic oscillator, whose E0 is known
+ * to be exactly 0.5, for a warmup and then for a fixed CPU time, and the
+ * mean reference energy is taken as the estimate, as the GUI and
+ * SimulationMonitor take it.  For each setting it reports:
+ * <ul>
+ * <li>the bias, the estimate less 0.5, and how many standard errors that
+ *     is (the time step error shows up here);
+ * <li>the standard error sigma and the correlation time of the
+ *     reference energy, by blocking (see EnergyEstimator);
+ * <li>the efficiency, 1 / (sigma^2 t) with t the CPU seconds, which does
+ *     not depend on how long the setting is run, so the higher the
+ *     better.
+ * </ul>
+ * The results are printed as a table and written as CSV.
+ * <p>
+ * Usage:
+ * <pre>
+ *     java bench.EfficiencyBenchmark [-walkers N,N,...] [-dtau X,X,...]
+ *         [-alpha X,X,...] [-warmup TAU] [-time SECONDS] [-seed N]
+ *         [-csv FILE]
+ * </pre>
+ * An alpha of -1 is the default feedback of 1/dTau.
+ */
+public class EfficiencyBenchmark
+{
+    /**
+     * The exact ground state energy of DMC_SHO.
+     */
+    public final static double EXACT_E0 = 0.5;
+
+    /**
+     * The header of the CSV file.
+     */
+    private final static String CSV_HEADER = "walkers,dtau,alpha,"
+	+ "iterations,cpu_s,e0,bias,bias_sigmas,sigma,correlation_time,"
+	+ "correlation_tau,efficiency,failed";
+
+    /**
+     * The settings of the grid.
+     */
+    private int[] walkers;
+    private double[] dTaus, alphas;
+
+    /**
+     * The simulation time each setting is warmed up for.
+     */
+    private double warmupTau;
+
+    /**
+     * The CPU nanoseconds each setting is measured for.
+     */
+    private long cpuNanos;
+
+    /**
+     * The seed of every simulation.
+     */
+    private long seed;
+
+    /**
+     * The results, one line of CSV per setting.
+     */
+    private StringBuffer csv = new StringBuffer();
+
+    /**
+     * Creates a benchmark of a grid of settings.
+     *
+     * @param walkers The numbers of walkers.
+     * @param dTaus The time steps.
+     * @param alphas The feedback parameters, -1 for 1/dTau.
+     * @param warmupTau The simulation time to warm up for.
+     * @param cpuSeconds The CPU seconds to measure for.
+     * @param seed The seed of every simulation.
+     */
+    public EfficiencyBenchmark(int[] walkers, double[] dTaus, double[] alphas,
+			       double warmupTau, double cpuSeconds, long seed)
+    {
+	this.walkers = walkers;
+	this.dTaus = dTaus;
+	this.alphas = alphas;
+	this.warmupTau = warmupTau;
+	cpuNanos = (long) (cpuSeconds * 1.0e9);
+	this.seed = seed;
+    }
+
+    /**
+     * Runs every setting, printing each as it is done.
+     */
+    public void run()
+    {
+	System.out.println(pad("walkers", 8) + pad("dtau", 7) 
+			   + pad("alpha", 7) + pad("iters", 9) 
+			   + pad("E0", 11) + pad("bias", 11) 
+			   + pad("/sigma", 8) + pad("sigma", 11) 
+			   + pad("corr it", 9) + pad("efficiency", 12));
+	for (int w = 0; w < walkers.length; w++)
+	    for (int d = 0; d < dTaus.length; d++)
+		for (int a = 0; a < alphas.length; a++)
+		    measure(walkers[w], dTaus[d], alphas[a]);
+    }
+
+    /**
+     * Runs and reports one setting.
+     *
+     * @param numWalkers The number of walkers.
+     * @param dTau The time step.
+     * @param alpha The feedback parameter, -1 for 1/dTau.
+     */
+    private void measure(int numWalkers, double dTau, double alpha)
+    {
+	ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	DMC simulation = new DMC_SHO(numWalkers, DMC.DEFAULT_REF_ENERGY, 
+				     false, dTau, alpha, seed, 
+				     DMC.INIT_GAUSSIAN, 0.0, 1.0);
+	EnergyEstimator estimator = new EnergyEstimator();
+	boolean failed = false;
+	long cpu = 0;
+	try {
+	    while (simulation.tau < warmupTau)
+		simulation.Iterate();
+	    long start = threads.getCurrentThreadCpuTime();
+	    // The clock is read every few iterations, as reading it costs
+	    // about as much as iterating a few walkers:
+	    while (cpu < cpuNanos) {
+		for (int i = 0; i < 16; i++) {
+		    simulation.Iterate();
+		    estimator.add(simulation.refEnergy);
+		}
+		cpu = threads.getCurrentThreadCpuTime() - start;
+	    }
+	}
+	catch (RuntimeException e) {
+	    failed = true;
+	}
+
+	double seconds = cpu / 1.0e9;
+	double e0 = estimator.mean();
+	double bias = e0 - EXACT_E0;
+	double sigma = estimator.error();
+	double tau = estimator.correlationTime();
+	double efficiency = 1.0 / (sigma * sigma * seconds);
+	DecimalFormat f = new DecimalFormat("0.000000");
+	DecimalFormat g = new DecimalFormat("0.0##");
+	DecimalFormat e = new DecimalFormat("0.00E0");
+	System.out.println(pad(Integer.toString(numWalkers), 8) 
+			   + pad(g.format(dTau), 7) 
+			   + pad(alpha < 0 ? "1/dtau" : g.format(alpha), 7)
+			   + pad(Long.toString(estimator.count()), 9)
+			   + pad(f.format(e0), 11) + pad(f.format(bias), 11)
+			   + pad(new DecimalFormat("0.0").format(bias / sigma), 
+				 8)
+			   + pad(f.format(sigma), 11) 
+			   + pad(new DecimalFormat("0.0").format(tau), 9)
+			   + pad(e.format(efficiency), 12)
+			   + (failed ? "  (died out or exploded)" : ""));
+	csv.append(numWalkers).append(',').append(dTau).append(',')
+	    .append(alpha).append(',').append(estimator.count()).append(',')
+	    .append(seconds).append(',').append(e0).append(',')
+	    .append(bias).append(',').append(bias / sigma).append(',')
+	    .append(sigma).append(',').append(tau).append(',')
+	    .append(tau * dTau).append(',').append(efficiency).append(',')
+	    .append(failed).append('\n');
+    }
+
+    /**
+     * Writes the results as CSV.
+     *
+     * @param file The file to write.
+     * @throws IOException if it cannot be written
+     */
+    public void writeCSV(String file) throws IOException
+    {
+	PrintWriter out = new PrintWriter(new FileWriter(file));
+	out.println(CSV_HEADER);
+	out.print(csv);
+	out.close();
+	if (out.checkError())
+	    throw new IOException("Could not write " + file);
+    }
+
+    /**
+     * Pads a column of the table on the left.
+     *
+     * @param s The text of the column.
+     * @param width The width of the column.
+     * @return the padded text
+     */
+    private static String pad(String s, int width)
+    {
+	StringBuffer b = new StringBuffer();
+	for (int i = s.length(); i < width; i++)
+	    b.append(' ');
+	return b.append(s).toString();
+    }
+
+    /**
+     * Parses a comma separated list of numbers.
+     *
+     * @param s The list.
+     * @return the numbers
+     */
+    private static double[] parseDoubles(String s)
+    {
+	String[] t = s.split(",");
+	double[] x = new double[t.length];
+	for (int i = 0; i < t.length; i++)
+	    x[i] = Double.parseDouble(t[i].trim());
+	return x;
+    }
+
+    /**
+     * Parses the options and runs every setting.
+     *
+     * @param args The options.
+     */
+    public static void main(String[] args) throws IOException
+    {
+	String walkers = "500,2000";
+	String dTaus = "0.01,0.05,0.1";
+	String alphas = "-1,0.1";
+	double warmup = 10.0;
+	double time = 5.0;
+	long seed = DMC.DEFAULT_SEED;
+	String file = "efficiency.csv";
+	int[] w = null;
+	double[] d = null, a = null;
+	try {
+	    for (int i = 0; i < args.length; i += 2) {
+		String value = args[i + 1];
+		if (args[i].equals("-walkers"))
+		    walkers = value;
+		else if (args[i].equals("-dtau"))
+		    dTaus = value;
+		else if (args[i].equals("-alpha"))
+		    alphas = value;
+		else if (args[i].equals("-warmup"))
+		    warmup = Double.parseDouble(value);
+		else if (args[i].equals("-time"))
+		    time = Double.parseDouble(value);
+		else if (args[i].equals("-seed"))
+		    seed = Long.parseLong(value);
+		else if (args[i].equals("-csv"))
+		    file = value;
+		else
+		    throw new IllegalArgumentException(args[i]);
+	    }
+	    double[] n = parseDoubles(walkers);
+	    w = new int[n.length];
+	    for (int i = 0; i < n.length; i++)
+		w[i] = (int) n[i];
+	    d = parseDoubles(dTaus);
+	    a = parseDoubles(alphas);
+	}
+	catch (RuntimeException e) {
+	    System.err.println("usage: java bench.EfficiencyBenchmark"
+			       + " [-walkers N,N,...] [-dtau X,X,...]"
+			       + " [-alpha X,X,...] [-warmup TAU]"
+			       + " [-time SECONDS] [-seed N] [-csv FILE]");
+	    System.exit(2);
+	}
+	EfficiencyBenchmark b = new EfficiencyBenchmark(w, d, a, warmup, 
+							time, seed);
+	b.run();
+	b.writeCSV(file);
+	System.out.println("Results written to " + file);
+    }
+}
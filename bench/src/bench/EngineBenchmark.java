@@ -0,0 +1,113 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dmc.DMC;
+
+/**
+ * Benchmarks the phases of an iteration, and whole iterations, for each
+ * potential and for populations from 10^2 to 10^7 walkers.  Divide the
+ * time per operation by numWalkers for the time per walker-step.
+ * <p>
+ * A fresh simulation is made and walked once for each measurement
+ * iteration, so the population is the same size at the start of each and
+ * its average potential has been worked out.  Walking alone lets the
+ * walkers diffuse further than they would, but its cost does not depend
+ * on where they are.  Branching alone would let the population run away,
+ * since the reference energy is only updated by walk(), so the branching
+ * benchmark updates it first.  The average potential it is updated from
+ * stays that of the walk in the setup, though, so it is only the feedback
+ * on the population size that holds the population near its target; and
+ * as nothing moves the walkers, the population collapses over the
+ * measurement onto the few of lowest potential.  Neither changes the cost
+ * of branching a walker, which is what is measured.
+ * <p>
+ * The largest populations need a big heap, hence -Xmx4g.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class EngineBenchmark
+{
+    /**
+     * The potential, Simulations.LINEAR or Simulations.SHO.
+     */
+    @Param({ "linear", "sho" })
+    public String potential;
+
+    /**
+     * The number of walkers.
+     */
+    @Param({ "100", "1000", "10000", "100000", "1000000", "10000000" })
+    public int numWalkers;
+
+    /**
+     * The simulation benchmarked.
+     */
+    private DMC simulation;
+
+    /**
+     * Makes a fresh simulation, and walks it once so its average potential
+     * is that of its walkers.
+     */
+    @Setup(Level.Iteration)
+    public void setUp()
+    {
+	simulation = Simulations.create(potential, numWalkers);
+	simulation.walk();
+    }
+
+    /**
+     * Moves every walker and updates the reference energy.
+     *
+     * @return the reference energy, so the work is not optimized away
+     */
+    @Benchmark
+    public double walk()
+    {
+	simulation.walk();
+	return simulation.refEnergy;
+    }
+
+    /**
+     * Updates the reference energy from the population size and branches
+     * every walker.
+     *
+     * @return the number of walkers, so the work is not optimized away
+     */
+    @Benchmark
+    public int branch()
+    {
+	simulation.updateRefEnergy();
+	simulation.branch();
+	return simulation.walkers.size();
+    }
+
+    /**
+     * Runs a whole iteration.
+     *
+     * @return the number of walkers, so the work is not optimized away
+     */
+    @Benchmark
+    public int iterate()
+    {
+	simulation.Iterate();
+	return simulation.walkers.size();
+    }
+}
@@ -0,0 +1,104 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dmc.DMC;
+import graphs.Coordinate;
+import graphs.GraphData;
+
+/**
+ * Benchmarks adding a point to a data graph's data, once per batch of
+ * iterations, for each potential and for a bounded and an unbounded
+ * (archived) series.  The y values are the reference energies of a run
+ * of the simulation, so the range tracking sees them as it would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphDataBenchmark
+{
+    /**
+     * The number of reference energies recorded, which are then cycled.
+     */
+    private final static int NUM_VALUES = 4096;
+
+    /**
+     * The number of walkers of the simulation recorded.
+     */
+    private final static int NUM_WALKERS = 1000;
+
+    /**
+     * The potential, Simulations.LINEAR or Simulations.SHO.
+     */
+    @Param({ "linear", "sho" })
+    public String potential;
+
+    /**
+     * The maximum number of points, or -1 for none.
+     */
+    @Param({ "1000", "-1" })
+    public int maxPoints;
+
+    /**
+     * The reference energies recorded.
+     */
+    private double[] values = new double[NUM_VALUES];
+
+    /**
+     * The data added to.
+     */
+    private GraphData data;
+
+    /**
+     * The coordinate added, changed before each add.
+     */
+    private Coordinate c = new Coordinate(0.0, 0.0);
+
+    /**
+     * The number of points added.
+     */
+    private long n;
+
+    /**
+     * Records the reference energies and makes the data.
+     */
+    @Setup
+    public void setUp()
+    {
+	DMC simulation = Simulations.create(potential, NUM_WALKERS);
+	for (int i = 0; i < NUM_VALUES; i++) {
+	    simulation.Iterate();
+	    values[i] = simulation.refEnergy;
+	}
+	data = new GraphData(0, 1, 0, 1, maxPoints);
+    }
+
+    /**
+     * Adds the next point.
+     *
+     * @return the size of the data
+     */
+    @Benchmark
+    public int addCoordinate()
+    {
+	c.x = n;
+	c.y = values[(int) (n++ % NUM_VALUES)];
+	data.addCoordinate(c);
+	return data.size;
+    }
+}
@@ -0,0 +1,136 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dmc.DMC;
+import dmc.Walker;
+import graphs.HistogramData;
+import graphs.Phi0EstimateData;
+
+/**
+ * Benchmarks binning a population, for each potential and for a small
+ * and a large population: into the Phi_0 estimate (addData()) and into
+ * the histogram, both from a whole vector of walkers (fill()) and walker
+ * by walker as the simulation hands them over (observe()).  The walkers
+ * are those of a simulation run for a few iterations, so they are spread
+ * as that potential spreads them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObservableBenchmark
+{
+    /**
+     * The number of iterations the simulation is run before binning.
+     */
+    private final static int SETTLE_ITERATIONS = 20;
+
+    /**
+     * The number of bins of the histogram, as the GUI has by default.
+     */
+    private final static int NUM_BINS = 200;
+
+    /**
+     * The potential, Simulations.LINEAR or Simulations.SHO.
+     */
+    @Param({ "linear", "sho" })
+    public String potential;
+
+    /**
+     * The number of walkers.
+     */
+    @Param({ "1000", "100000" })
+    public int numWalkers;
+
+    /**
+     * The simulation whose walkers are binned.
+     */
+    private DMC simulation;
+
+    /**
+     * The positions of the walkers.
+     */
+    private double[] positions;
+
+    /**
+     * The Phi_0 estimate binned into.
+     */
+    private Phi0EstimateData phi0;
+
+    /**
+     * The histogram binned into.
+     */
+    private HistogramData histogram;
+
+    /**
+     * Runs the simulation and makes the datasets.
+     */
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+	simulation = Simulations.settled(potential, numWalkers, 
+					 SETTLE_ITERATIONS);
+	positions = new double[simulation.walkers.size()];
+	for (int i = 0; i < positions.length; i++)
+	    positions[i] = ((Walker) simulation.walkers.get(i)).x;
+	phi0 = new Phi0EstimateData(DMC.DEFAULT_X_MIN, DMC.DEFAULT_X_MAX);
+	histogram = new HistogramData(DMC.DEFAULT_X_MIN, DMC.DEFAULT_X_MAX,
+				      NUM_BINS);
+    }
+
+    /**
+     * Bins every walker into the Phi_0 estimate.
+     *
+     * @return the number of populations binned
+     */
+    @Benchmark
+    public long phi0AddData()
+    {
+	phi0.addData(simulation.walkers);
+	return phi0.numBinned;
+    }
+
+    /**
+     * Refills the histogram from every walker.
+     *
+     * @return the highest bin
+     */
+    @Benchmark
+    public int histogramFill()
+    {
+	histogram.fill(simulation.walkers);
+	return histogram.binMax;
+    }
+
+    /**
+     * Bins every walker into the histogram one at a time, as the
+     * simulation does while branching.
+     *
+     * @return the highest bin
+     */
+    @Benchmark
+    public int histogramObserve()
+    {
+	histogram.startIteration(simulation);
+	for (int i = 0; i < positions.length; i++)
+	    histogram.observe(positions[i], 1);
+	histogram.endIteration(simulation);
+	return histogram.binMax;
+    }
+}
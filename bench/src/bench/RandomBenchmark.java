@@ -0,0 +1,55 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rvg.VariateGenerator;
+
+/**
+ * Benchmarks the random variates drawn for every walker every iteration:
+ * a Normal one per walk and a Uniform one per branching.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomBenchmark
+{
+    /**
+     * The generator, seeded as the simulations are.
+     */
+    private VariateGenerator rvg = new VariateGenerator(Simulations.SEED);
+
+    /**
+     * Draws a standard Normal variate, as DMC.walk() does.
+     *
+     * @return the variate
+     */
+    @Benchmark
+    public double normal()
+    {
+	return rvg.Normal(0.0, 1.0);
+    }
+
+    /**
+     * Draws a Uniform variate on [0, 1), as DMC.branch() does.
+     *
+     * @return the variate
+     */
+    @Benchmark
+    public double uniform()
+    {
+	return rvg.Uniform(0.0, 1.0);
+    }
+}
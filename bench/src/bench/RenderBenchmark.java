@@ -0,0 +1,466 @@
+package bench;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.Integer;
+import java.lang.Math;
+import java.lang.RuntimeException;
+import java.lang.String;
+import java.lang.StringBuffer;
+import java.lang.System;
+import java.text.DecimalFormat;
+
+import dmc.DMC;
+import dmc.LatencyHistogram;
+import edu.uah.math.devices.Graph;
+import edu.uah.math.distributions.Domain;
+import graphs.DataGraph;
+import graphs.Function;
+import graphs.GraphData;
+import graphs.Histogram;
+import graphs.HistogramData;
+import graphs.Phi0EstimateData;
+import graphs.Phi0Histogram;
+
+/**
+ * This class measures how long the graphs take to paint, headless, by
+ * painting them into an offscreen image at the sizes the GUI shows them
+ * at (the big panel, 380x310, and the two little ones, 185x136 and
+ * 185x135) with realistic data: a histogram and Phi_0 estimate of a
+ * population of a million walkers, and data graphs of series of 100,000
+ * points.
+ * <p>
+ * Each graph is timed two ways:
+ * <ul>
+ * <li>frame, painting the same graph over and over as the GUI does, the
+ *     series gaining a point each frame, so the axes and functions are
+ *     mostly taken from the cached layers;
+ * <li>cold, painting a new graph each time, as after the graph is changed
+ *     or resized, so the axes and functions are drawn too.
+ * </ul>
+ * Graph.drawAxis is also timed on its own, as the data graphs call it.
+ * It runs under java.awt.headless=true, which it sets unless told
+ * otherwise.
+ * <p>
+ * Usage:
+ * <pre>
+ *     java bench.RenderBenchmark [-walkers N] [-points N] [-frames N]
+ *         [-warmup N] [-csv FILE]
+ * </pre>
+ */
+public class RenderBenchmark
+{
+    /**
+     * The sizes of the graph panels, as GUI.changeGraphs() is given them.
+     */
+    private final static int[][] SIZES = { { 380, 310 }, { 185, 136 }, 
+					   { 185, 135 } };
+
+    /**
+     * The graphs timed.
+     */
+    private final static String[] GRAPHS = { 
+	"histogram", "phi0Estimate", "numWalkers", "refEnergy", "e0Estimate"
+    };
+
+    /**
+     * The number of bins of the histograms, the GUI's default.
+     */
+    private final static int NUM_BINS = 200;
+
+    /**
+     * The number of walkers of the simulation the series are taken from.
+     */
+    private final static int SERIES_WALKERS = 200;
+
+    /**
+     * The header of the CSV file.
+     */
+    private final static String CSV_HEADER = "graph,width,height,kind,"
+	+ "frames,mean_us,p50_us,p99_us,max_us";
+
+    /**
+     * The population binned.
+     */
+    private HistogramData histogram;
+    private Phi0EstimateData phi0;
+
+    /**
+     * The series, and the values cycled through to extend them.
+     */
+    private GraphData numWalkers, refEnergy, e0Estimate;
+    private double[] walkerValues, energyValues, e0Values;
+
+    /**
+     * The number of points added to the series.
+     */
+    private int numAdded;
+
+    /**
+     * The number of frames to warm up for and to time.
+     */
+    private int warmup, frames;
+
+    /**
+     * The results, one line of CSV per case.
+     */
+    private StringBuffer csv = new StringBuffer();
+
+    /**
+     * Makes the data: a population of the given size, binned, and series
+     * of the given length from a smaller simulation.
+     *
+     * @param numWalkers The size of the population binned.
+     * @param numPoints The number of points of each series.
+     * @param warmup The number of frames to warm up for.
+     * @param frames The number of frames to time.
+     */
+    public RenderBenchmark(int numWalkers, int numPoints, int warmup, 
+			   int frames)
+    {
+	this.warmup = warmup;
+	this.frames = frames;
+	DMC simulation = Simulations.settled(Simulations.SHO, numWalkers, 3);
+	histogram = new HistogramData(DMC.DEFAULT_X_MIN, DMC.DEFAULT_X_MAX,
+				      NUM_BINS);
+	histogram.fill(simulation.walkers);
+	phi0 = new Phi0EstimateData(DMC.DEFAULT_X_MIN, DMC.DEFAULT_X_MAX);
+	phi0.addData(simulation.walkers);
+	simulation = null;
+
+	DMC s = Simulations.create(Simulations.SHO, SERIES_WALKERS);
+	walkerValues = new double[numPoints];
+	energyValues = new double[numPoints];
+	e0Values = new double[numPoints];
+	double sum = 0.0;
+	for (int i = 0; i < numPoints; i++) {
+	    s.Iterate();
+	    sum += s.refEnergy;
+	    walkerValues[i] = s.walkers.size();
+	    energyValues[i] = s.refEnergy;
+	    e0Values[i] = sum / (i + 1);
+	}
+	this.numWalkers = new GraphData(0, 1, 0, 1, numPoints);
+	this.refEnergy = new GraphData(0, 1, 0, 1, numPoints);
+	this.e0Estimate = new GraphData(0, 1, 0, 1, -1);
+	for (int i = 0; i < numPoints; i++)
+	    addPoint();
+    }
+
+    /**
+     * Adds the next point to each series, going round the values again
+     * once they are all used.
+     */
+    private void addPoint()
+    {
+	int i = numAdded % walkerValues.length;
+	double tau = numAdded++ * DMC.DEFAULT_DTAU;
+	numWalkers.add(tau, walkerValues[i]);
+	refEnergy.add(tau, energyValues[i]);
+	e0Estimate.add(tau, e0Values[i]);
+    }
+
+    /**
+     * Makes a graph, as GUI.changeGraphs() does.
+     *
+     * @param graph The name of the graph.
+     * @param width The width of the graph.
+     * @param height The height of the graph.
+     * @return the graph
+     */
+    @SuppressWarnings("unchecked")
+    private Graph create(String graph, int width, int height)
+    {
+	Graph g;
+	if (graph.equals("histogram"))
+	    g = new Histogram(width, height, histogram);
+	else if (graph.equals("phi0Estimate")) {
+	    Phi0Histogram h = new Phi0Histogram(width, height, phi0);
+	    h.numBins = NUM_BINS;
+	    h.xMin = DMC.DEFAULT_X_MIN;
+	    h.xMax = DMC.DEFAULT_X_MAX;
+	    h.functionList.add(new PhiFunction(Color.blue));
+	    g = h;
+	}
+	else {
+	    DataGraph d = new DataGraph(width, height);
+	    if (graph.equals("numWalkers"))
+		d.theData = numWalkers;
+	    else {
+		d.theData = graph.equals("refEnergy") ? refEnergy : e0Estimate;
+		d.functionList.add(new EnergyFunction(Color.blue));
+	    }
+	    g = d;
+	}
+	g.setSize(width, height);
+	return g;
+    }
+
+    /**
+     * Times painting a graph.
+     *
+     * @param graph The name of the graph.
+     * @param width The width of the graph.
+     * @param height The height of the graph.
+     * @param cold Whether to paint a new graph each frame.
+     * @return the times of the frames
+     */
+    private LatencyHistogram time(String graph, int width, int height, 
+				  boolean cold)
+    {
+	BufferedImage image = new BufferedImage(width, height, 
+						BufferedImage.TYPE_INT_RGB);
+	Graphics2D g = image.createGraphics();
+	LatencyHistogram h = new LatencyHistogram();
+	Graph c = create(graph, width, height);
+	boolean series = !graph.equals("histogram") 
+	    && !graph.equals("phi0Estimate");
+	for (int i = -warmup; i < frames; i++) {
+	    if (series)
+		addPoint();
+	    long t0 = System.nanoTime();
+	    if (cold)
+		c = create(graph, width, height);
+	    paint(c, g);
+	    if (i >= 0)
+		h.record(System.nanoTime() - t0);
+	}
+	g.dispose();
+	return h;
+    }
+
+    /**
+     * Paints a graph, as Swing would (Graph itself does not make
+     * paintComponent() public, the graphs do).
+     *
+     * @param c The graph.
+     * @param g The graphics element to paint it with.
+     */
+    private static void paint(Graph c, Graphics g)
+    {
+	if (c instanceof DataGraph)
+	    ((DataGraph) c).paintComponent(g);
+	else if (c instanceof Histogram)
+	    ((Histogram) c).paintComponent(g);
+	else
+	    ((Phi0Histogram) c).paintComponent(g);
+    }
+
+    /**
+     * Times drawing the two axes of a data graph, as it does when its
+     * cached layer must be drawn again.
+     *
+     * @param width The width of the graph.
+     * @param height The height of the graph.
+     * @return the times
+     */
+    private LatencyHistogram timeAxes(int width, int height)
+    {
+	BufferedImage image = new BufferedImage(width, height, 
+						BufferedImage.TYPE_INT_RGB);
+	Graphics2D g = image.createGraphics();
+	g.setColor(Color.black);
+	Graph graph = create("refEnergy", width, height);
+	graph.setScale(0.0, 10000.0, 0.4, 0.6);
+	graph.setMargins(20, 20, 30, 10);
+	LatencyHistogram h = new LatencyHistogram();
+	for (int i = -warmup; i < frames; i++) {
+	    long t0 = System.nanoTime();
+	    graph.drawAxis(g, 0.0, 10000.0, 1000.0, Domain.CONTINUOUS, 0.4,
+			   Graph.HORIZONTAL);
+	    graph.drawAxis(g, 0.4, 0.6, 0.02, Domain.CONTINUOUS, 0.0,
+			   Graph.VERTICAL);
+	    if (i >= 0)
+		h.record(System.nanoTime() - t0);
+	}
+	g.dispose();
+	return h;
+    }
+
+    /**
+     * Times every case, printing each as it is done.
+     */
+    public void run()
+    {
+	System.out.println(pad("graph", 14) + pad("size", 9) + pad("kind", 7)
+			   + pad("mean us", 10) + pad("p50 us", 10) 
+			   + pad("p99 us", 10) + pad("max us", 10) 
+			   + pad("fps", 9));
+	for (int s = 0; s < SIZES.length; s++) {
+	    int w = SIZES[s][0];
+	    int h = SIZES[s][1];
+	    for (int i = 0; i < GRAPHS.length; i++) {
+		report(GRAPHS[i], w, h, "frame", time(GRAPHS[i], w, h, false));
+		report(GRAPHS[i], w, h, "cold", time(GRAPHS[i], w, h, true));
+	    }
+	    report("drawAxis", w, h, "axes", timeAxes(w, h));
+	}
+    }
+
+    /**
+     * Prints the times of a case and adds them to the CSV.
+     *
+     * @param graph The name of the graph.
+     * @param width The width of the graph.
+     * @param height The height of the graph.
+     * @param kind How it was painted.
+     * @param h The times.
+     */
+    private void report(String graph, int width, int height, String kind,
+			LatencyHistogram h)
+    {
+	DecimalFormat f = new DecimalFormat("0.0");
+	double mean = h.getMean() / 1000.0;
+	double p50 = h.getPercentile(50.0) / 1000.0;
+	double p99 = h.getPercentile(99.0) / 1000.0;
+	double max = h.getMax() / 1000.0;
+	System.out.println(pad(graph, 14) + pad(width + "x" + height, 9)
+			   + pad(kind, 7) + pad(f.format(mean), 10)
+			   + pad(f.format(p50), 10) + pad(f.format(p99), 10)
+			   + pad(f.format(max), 10)
+			   + pad(f.format(1.0e6 / mean), 9));
+	csv.append(graph).append(',').append(width).append(',')
+	    .append(height).append(',').append(kind).append(',')
+	    .append(h.getCount()).append(',').append(mean).append(',')
+	    .append(p50).append(',').append(p99).append(',').append(max)
+	    .append('\n');
+    }
+
+    /**
+     * Writes the results as CSV.
+     *
+     * @param file The file to write.
+     * @throws IOException if it cannot be written
+     */
+    public void writeCSV(String file) throws IOException
+    {
+	PrintWriter out = new PrintWriter(new FileWriter(file));
+	out.println(CSV_HEADER);
+	out.print(csv);
+	out.close();
+	if (out.checkError())
+	    throw new IOException("Could not write " + file);
+    }
+
+    /**
+     * Pads a column of the table on the left.
+     *
+     * @param s The text of the column.
+     * @param width The width of the column.
+     * @return the padded text
+     */
+    private static String pad(String s, int width)
+    {
+	StringBuffer b = new StringBuffer();
+	for (int i = s.length(); i < width; i++)
+	    b.append(' ');
+	return b.append(s).toString();
+    }
+
+    /**
+     * Parses the options and times every case.
+     *
+     * @param args The options.
+     */
+    public static void main(String[] args) throws IOException
+    {
+	if (System.getProperty("java.awt.headless") == null)
+	    System.setProperty("java.awt.headless", "true");
+	int walkers = 1000000;
+	int points = 100000;
+	int frames = 500;
+	int warmup = 200;
+	String file = null;
+	try {
+	    for (int i = 0; i < args.length; i += 2) {
+		String value = args[i + 1];
+		if (args[i].equals("-walkers"))
+		    walkers = Integer.parseInt(value);
+		else if (args[i].equals("-points"))
+		    points = Integer.parseInt(value);
+		else if (args[i].equals("-frames"))
+		    frames = Integer.parseInt(value);
+		else if (args[i].equals("-warmup"))
+		    warmup = Integer.parseInt(value);
+		else if (args[i].equals("-csv"))
+		    file = value;
+		else
+		    throw new IllegalArgumentException(args[i]);
+	    }
+	}
+	catch (RuntimeException e) {
+	    System.err.println("usage: java bench.RenderBenchmark"
+			       + " [-walkers N] [-points N] [-frames N]"
+			       + " [-warmup N] [-csv FILE]");
+	    System.exit(2);
+	}
+	RenderBenchmark b = new RenderBenchmark(walkers, points, warmup,
+						frames);
+	b.run();
+	if (file != null) {
+	    b.writeCSV(file);
+	    System.out.println("Results written to " + file);
+	}
+    }
+
+    /**
+     * The ground state of the harmonic oscillator, which the GUI draws
+     * over the Phi_0 estimate.
+     */
+    private static class PhiFunction extends Function
+    {
+	/**
+	 * Creates the function.
+	 *
+	 * @param c The color to draw it in.
+	 */
+	PhiFunction(Color c)
+	{
+	    super(c);
+	}
+
+	/**
+	 * Returns the ground state.
+	 *
+	 * @param x The position.
+	 * @return phi_0(x)
+	 */
+	public double f(double x)
+	{
+	    return 0.7511255445 * Math.exp(-0.5 * x * x);
+	}
+    }
+
+    /**
+     * The ground state energy of the harmonic oscillator, which the GUI
+     * draws over the energy graphs.
+     */
+    private static class EnergyFunction extends Function
+    {
+	/**
+	 * Creates the function.
+	 *
+	 * @param c The color to draw it in.
+	 */
+	EnergyFunction(Color c)
+	{
+	    super(c);
+	}
+
+	/**
+	 * Returns the ground state energy.
+	 *
+	 * @param x The time.
+	 * @return 0.5
+	 */
+	public double f(double x)
+	{
+	    return 0.5;
+	}
+    }
+}
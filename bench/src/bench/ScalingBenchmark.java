@@ -0,0 +1,501 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.Double;
+import java.lang.IllegalArgumentException;
+import java.lang.Integer;
+import java.lang.InterruptedException;
+import java.lang.Long;
+import java.lang.Runnable;
+import java.lang.Runtime;
+import java.lang.RuntimeException;
+import java.lang.String;
+import java.lang.StringBuffer;
+import java.lang.System;
+import java.lang.Thread;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.text.DecimalFormat;
+import java.util.Iterator;
+import java.util.StringTokenizer;
+import java.util.Vector;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+import dmc.DMC;
+import dmc.DMC_SHO;
+
+/**
+ * This class measures how the engine scales: the walker-steps per second
+ * over a grid of population sizes, thread counts and potentials.  Each
+ * point of the grid runs as many independent simulations (replicas, each
+ * with its own seed) as there are threads, one per thread, first for a
+ * warmup and then, all starting together, for a measured time.
+ * <p>
+ * For each point it reports the total walker-steps per second, the
+ * speedup and parallel efficiency over the first thread count of the grid
+ * (the usual ones when that is 1), the time spent collecting garbage
+ * while measuring, and the peak resident memory of the process (reset
+ * before each point where Linux allows, read from /proc/self/status).
+ * The results are printed as a table and written as CSV.
+ * <p>
+ * Usage:
+ * <pre>
+ *     java bench.ScalingBenchmark [-walkers 100,1000,...] [-threads 1,2,...]
+ *         [-potentials linear,sho] [-warmup SECONDS] [-time SECONDS]
+ *         [-csv FILE]
+ * </pre>
+ * By default the thread counts are the powers of two up to the number of
+ * processors, and the number of processors itself.
+ */
+public class ScalingBenchmark
+{
+    /**
+     * The default population sizes.
+     */
+    private final static String DEFAULT_WALKERS = "100,1000,10000,100000,1000000";
+
+    /**
+     * The default potentials.
+     */
+    private final static String DEFAULT_POTENTIALS = "linear,sho";
+
+    /**
+     * The header of the CSV file.
+     */
+    private final static String CSV_HEADER = "potential,walkers,threads,"
+	+ "walker_steps_per_s,speedup,efficiency,gc_ms,gc_count,"
+	+ "peak_rss_kb,failed";
+
+    /**
+     * The population sizes, thread counts and potentials of the grid.
+     */
+    private int[] walkers, threads;
+    private String[] potentials;
+
+    /**
+     * The warmup and measured nanoseconds of each point.
+     */
+    private long warmupNanos, measureNanos;
+
+    /**
+     * The results, one line of CSV per point.
+     */
+    private Vector<String> rows = new Vector<String>();
+
+    /**
+     * Creates a benchmark of a grid.
+     *
+     * @param walkers The population sizes.
+     * @param threads The thread counts.
+     * @param potentials The potentials, "linear" or "sho".
+     * @param warmupSeconds The seconds each point is warmed up for.
+     * @param measureSeconds The seconds each point is measured for.
+     */
+    public ScalingBenchmark(int[] walkers, int[] threads, String[] potentials,
+			    double warmupSeconds, double measureSeconds)
+    {
+	this.walkers = walkers;
+	this.threads = threads;
+	this.potentials = potentials;
+	warmupNanos = (long) (warmupSeconds * 1.0e9);
+	measureNanos = (long) (measureSeconds * 1.0e9);
+    }
+
+    /**
+     * Runs the whole grid, printing each point as it is done.
+     */
+    public void run()
+    {
+	DecimalFormat f = new DecimalFormat("0.00");
+	System.out.println(pad("potential", 10) + pad("walkers", 10)
+			   + pad("threads", 8) + pad("steps/s", 14)
+			   + pad("speedup", 9) + pad("effic.", 8)
+			   + pad("gc ms", 8) + pad("gcs", 6) + pad("peak MB", 9));
+	for (int p = 0; p < potentials.length; p++)
+	    for (int w = 0; w < walkers.length; w++) {
+		double base = 0.0;
+		for (int t = 0; t < threads.length; t++) {
+		    Point r = measure(potentials[p], walkers[w], threads[t]);
+		    if (t == 0)
+			base = r.throughput;
+		    double speedup = base > 0.0 ? r.throughput / base : 0.0;
+		    double efficiency = speedup * threads[0] / threads[t];
+		    System.out.println(pad(potentials[p], 10)
+				       + pad(Integer.toString(walkers[w]), 10)
+				       + pad(Integer.toString(threads[t]), 8)
+				       + pad(Long.toString((long) r.throughput), 14)
+				       + pad(f.format(speedup), 9)
+				       + pad(f.format(efficiency), 8)
+				       + pad(Long.toString(r.gcMillis), 8)
+				       + pad(Long.toString(r.gcCount), 6)
+				       + pad(r.peakKB < 0 ? "?" 
+					     : f.format(r.peakKB / 1024.0), 9)
+				       + (r.failed > 0 ? "  (" + r.failed 
+					  + " died out or exploded)" : ""));
+		    rows.add(potentials[p] + "," + walkers[w] + "," 
+			     + threads[t] + "," + r.throughput + "," 
+			     + speedup + "," + efficiency + "," 
+			     + r.gcMillis + "," + r.gcCount + "," 
+			     + r.peakKB + "," + r.failed);
+		}
+	    }
+    }
+
+    /**
+     * Writes the results as CSV.
+     *
+     * @param file The file to write.
+     * @throws IOException if it cannot be written
+     */
+    public void writeCSV(String file) throws IOException
+    {
+	PrintWriter out = new PrintWriter(new FileWriter(file));
+	out.println(CSV_HEADER);
+	Iterator<String> i = rows.iterator();
+	while (i.hasNext())
+	    out.println(i.next());
+	out.close();
+	if (out.checkError())
+	    throw new IOException("Could not write " + file);
+    }
+
+    /**
+     * Measures one point of the grid.
+     *
+     * @param potential The potential.
+     * @param numWalkers The population size.
+     * @param numThreads The number of replicas, one per thread.
+     * @return the results
+     */
+    private Point measure(String potential, int numWalkers, int numThreads)
+    {
+	System.gc();
+	resetPeakRSS();
+	CyclicBarrier start = new CyclicBarrier(numThreads + 1);
+	Replica[] replicas = new Replica[numThreads];
+	Thread[] t = new Thread[numThreads];
+	for (int i = 0; i < numThreads; i++) {
+	    replicas[i] = new Replica(create(potential, numWalkers, 
+					     DMC.DEFAULT_SEED + i), start);
+	    t[i] = new Thread(replicas[i], "DMC Replica " + i);
+	    t[i].start();
+	}
+
+	Point r = new Point();
+	long gcMillis = 0, gcCount = 0;
+	try {
+	    start.await();
+	    Iterator<GarbageCollectorMXBean> g 
+		= ManagementFactory.getGarbageCollectorMXBeans().iterator();
+	    while (g.hasNext()) {
+		GarbageCollectorMXBean b = g.next();
+		gcMillis -= b.getCollectionTime();
+		gcCount -= b.getCollectionCount();
+	    }
+	    for (int i = 0; i < numThreads; i++)
+		t[i].join();
+	}
+	catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	catch (BrokenBarrierException e) {
+	}
+	Iterator<GarbageCollectorMXBean> g 
+	    = ManagementFactory.getGarbageCollectorMXBeans().iterator();
+	while (g.hasNext()) {
+	    GarbageCollectorMXBean b = g.next();
+	    gcMillis += b.getCollectionTime();
+	    gcCount += b.getCollectionCount();
+	}
+	for (int i = 0; i < numThreads; i++) {
+	    if (replicas[i].failed)
+		r.failed++;
+	    else if (replicas[i].nanos > 0)
+		r.throughput += replicas[i].steps * 1.0e9 / replicas[i].nanos;
+	}
+	r.gcMillis = gcMillis;
+	r.gcCount = gcCount;
+	r.peakKB = peakRSS();
+	return r;
+    }
+
+    /**
+     * Makes a replica's simulation.
+     *
+     * @param potential "linear" or "sho".
+     * @param numWalkers The number of walkers.
+     * @param seed The seed.
+     * @return the simulation
+     */
+    private static DMC create(String potential, int numWalkers, long seed)
+    {
+	if (potential.equals("sho"))
+	    return new DMC_SHO(numWalkers, DMC.DEFAULT_REF_ENERGY, false,
+			       DMC.DEFAULT_DTAU, DMC.DEFAULT_ALPHA, seed,
+			       DMC.INIT_GAUSSIAN, 0.0, 1.0);
+	return new DMC(numWalkers, DMC.DEFAULT_REF_ENERGY, false,
+		       DMC.DEFAULT_DTAU, DMC.DEFAULT_ALPHA, seed,
+		       DMC.INIT_GAUSSIAN, 0.0, 1.0);
+    }
+
+    /**
+     * Resets the peak resident memory of the process, which Linux allows
+     * by writing 5 to /proc/self/clear_refs.  If it cannot, the peak is
+     * that of the whole run so far.
+     */
+    private static void resetPeakRSS()
+    {
+	try {
+	    FileWriter w = new FileWriter("/proc/self/clear_refs");
+	    w.write("5");
+	    w.close();
+	}
+	catch (IOException e) {
+	}
+    }
+
+    /**
+     * Returns the peak resident memory of the process, the VmHWM line of
+     * /proc/self/status.
+     *
+     * @return the number of kilobytes, or -1 if not known
+     */
+    private static long peakRSS()
+    {
+	try {
+	    BufferedReader r 
+		= new BufferedReader(new FileReader("/proc/self/status"));
+	    try {
+		String line;
+		while ((line = r.readLine()) != null)
+		    if (line.startsWith("VmHWM:")) {
+			StringTokenizer s = new StringTokenizer(line);
+			s.nextToken();
+			return Long.parseLong(s.nextToken());
+		    }
+	    }
+	    finally {
+		r.close();
+	    }
+	}
+	catch (IOException e) {
+	}
+	catch (RuntimeException e) {
+	}
+	return -1;
+    }
+
+    /**
+     * Pads a column of the table on the left.
+     *
+     * @param s The text of the column.
+     * @param width The width of the column.
+     * @return the padded text
+     */
+    private static String pad(String s, int width)
+    {
+	StringBuffer b = new StringBuffer();
+	for (int i = s.length(); i < width; i++)
+	    b.append(' ');
+	return b.append(s).toString();
+    }
+
+    /**
+     * Parses a comma separated list of numbers.
+     *
+     * @param s The list.
+     * @return the numbers
+     */
+    private static int[] parseInts(String s)
+    {
+	String[] t = s.split(",");
+	int[] n = new int[t.length];
+	for (int i = 0; i < t.length; i++)
+	    n[i] = Integer.parseInt(t[i].trim());
+	return n;
+    }
+
+    /**
+     * Returns the default thread counts: the powers of two below the
+     * number of processors, and the number of processors.
+     *
+     * @return the thread counts
+     */
+    private static String defaultThreads()
+    {
+	int cpus = Runtime.getRuntime().availableProcessors();
+	StringBuffer b = new StringBuffer();
+	for (int n = 1; n < cpus; n *= 2)
+	    b.append(n).append(',');
+	return b.append(cpus).toString();
+    }
+
+    /**
+     * Parses the options and runs the grid.
+     *
+     * @param args The options.
+     */
+    public static void main(String[] args) throws Exception
+    {
+	String walkers = DEFAULT_WALKERS;
+	String threads = defaultThreads();
+	String potentials = DEFAULT_POTENTIALS;
+	double warmup = 1.0;
+	double time = 3.0;
+	String csv = "scaling.csv";
+	int[] w = null, t = null;
+	String[] p = null;
+	try {
+	    for (int i = 0; i < args.length; i += 2) {
+		String value = args[i + 1];
+		if (args[i].equals("-walkers"))
+		    walkers = value;
+		else if (args[i].equals("-threads"))
+		    threads = value;
+		else if (args[i].equals("-potentials"))
+		    potentials = value;
+		else if (args[i].equals("-warmup"))
+		    warmup = Double.parseDouble(value);
+		else if (args[i].equals("-time"))
+		    time = Double.parseDouble(value);
+		else if (args[i].equals("-csv"))
+		    csv = value;
+		else
+		    throw new IllegalArgumentException(args[i]);
+	    }
+	    w = parseInts(walkers);
+	    t = parseInts(threads);
+	    p = potentials.split(",");
+	    for (int i = 0; i < p.length; i++)
+		if (!p[i].equals("linear") && !p[i].equals("sho"))
+		    throw new IllegalArgumentException(p[i]);
+	}
+	catch (RuntimeException e) {
+	    System.err.println("usage: java bench.ScalingBenchmark"
+			       + " [-walkers N,N,...] [-threads N,N,...]"
+			       + " [-potentials linear,sho] [-warmup SECONDS]"
+			       + " [-time SECONDS] [-csv FILE]");
+	    System.exit(2);
+	}
+	ScalingBenchmark b = new ScalingBenchmark(w, t, p, warmup, time);
+	System.out.println(Runtime.getRuntime().availableProcessors()
+			   + " processors, " 
+			   + Runtime.getRuntime().maxMemory() / (1024 * 1024)
+			   + " MB heap");
+	b.run();
+	b.writeCSV(csv);
+	System.out.println("Results written to " + csv);
+    }
+
+    /**
+     * The results of one point of the grid.
+     */
+    private static class Point
+    {
+	/**
+	 * The total walker-steps per second of the replicas.
+	 */
+	double throughput;
+
+	/**
+	 * The milliseconds spent collecting garbage while measuring, and
+	 * the number of collections.
+	 */
+	long gcMillis, gcCount;
+
+	/**
+	 * The peak resident memory in kilobytes, or -1 if not known.
+	 */
+	long peakKB;
+
+	/**
+	 * The number of replicas whose population died out or exploded.
+	 */
+	int failed;
+    }
+
+    /**
+     * One simulation, run on a thread of its own: warmed up, then run
+     * from when all of the replicas are ready for the measured time.
+     */
+    private class Replica implements Runnable
+    {
+	/**
+	 * The simulation run.
+	 */
+	private DMC simulation;
+
+	/**
+	 * Where the replicas wait for each other to start measuring.
+	 */
+	private CyclicBarrier start;
+
+	/**
+	 * The walker-steps done and the nanoseconds taken while measuring.
+	 */
+	long steps, nanos;
+
+	/**
+	 * Whether or not the simulation failed.
+	 */
+	boolean failed;
+
+	/**
+	 * Creates a replica.
+	 *
+	 * @param simulation The simulation to run.
+	 * @param start Where to wait for the others to start measuring.
+	 */
+	Replica(DMC simulation, CyclicBarrier start)
+	{
+	    this.simulation = simulation;
+	    this.start = start;
+	}
+
+	/**
+	 * Warms up, waits for the others, then runs for the measured time.
+	 */
+	public void run()
+	{
+	    try {
+		long end = System.nanoTime() + warmupNanos;
+		while (System.nanoTime() < end)
+		    simulation.Iterate();
+	    }
+	    catch (RuntimeException e) {
+		failed = true;
+	    }
+	    try {
+		start.await();
+	    }
+	    catch (InterruptedException e) {
+		return;
+	    }
+	    catch (BrokenBarrierException e) {
+		return;
+	    }
+	    if (failed)
+		return;
+	    long s0 = simulation.stats.walkerSteps;
+	    long t0 = System.nanoTime();
+	    long end = t0 + measureNanos;
+	    long now = t0;
+	    try {
+		while (now < end) {
+		    simulation.Iterate();
+		    now = System.nanoTime();
+		}
+	    }
+	    catch (RuntimeException e) {
+		failed = true;
+	    }
+	    steps = simulation.stats.walkerSteps - s0;
+	    nanos = now - t0;
+	}
+    }
+}
@@ -0,0 +1,67 @@
+package bench;
+
+import dmc.DMC;
+import dmc.DMC_SHO;
+
+/**
+ * This class makes the simulations the benchmarks run, so that every
+ * benchmark starts from the same population for a given potential, size
+ * and seed.
+ */
+public class Simulations
+{
+    /**
+     * The potential of DMC itself, V(x) = x.
+     */
+    public final static String LINEAR = "linear";
+
+    /**
+     * The potential of DMC_SHO, V(x) = x^2 / 2.
+     */
+    public final static String SHO = "sho";
+
+    /**
+     * The seed every simulation is started with.
+     */
+    public final static long SEED = 20040501L;
+
+    /**
+     * Makes a simulation with the walkers spread like the ground state of
+     * the harmonic oscillator (a unit Gaussian), so that it takes few
+     * iterations to settle, and the default time step and feedback.
+     *
+     * @param potential LINEAR or SHO.
+     * @param numWalkers The number of walkers.
+     * @return the simulation
+     */
+    public static DMC create(String potential, int numWalkers)
+    {
+	if (potential.equals(SHO))
+	    return new DMC_SHO(numWalkers, DMC.DEFAULT_REF_ENERGY, false,
+			       DMC.DEFAULT_DTAU, DMC.DEFAULT_ALPHA, SEED,
+			       DMC.INIT_GAUSSIAN, 0.0, 1.0);
+	if (potential.equals(LINEAR))
+	    return new DMC(numWalkers, DMC.DEFAULT_REF_ENERGY, false,
+			   DMC.DEFAULT_DTAU, DMC.DEFAULT_ALPHA, SEED,
+			   DMC.INIT_GAUSSIAN, 0.0, 1.0);
+	throw new IllegalArgumentException("Unknown potential: " + potential);
+    }
+
+    /**
+     * Makes a simulation as create() does and runs it for a few
+     * iterations, so that the population has gone through branching.
+     *
+     * @param potential LINEAR or SHO.
+     * @param numWalkers The number of walkers.
+     * @param iterations The number of iterations to run.
+     * @return the simulation
+     */
+    public static DMC settled(String potential, int numWalkers, 
+			      int iterations)
+    {
+	DMC simulation = create(potential, numWalkers);
+	for (int i = 0; i < iterations; i++)
+	    simulation.Iterate();
+	return simulation;
+    }
+}
@@ -0,0 +1,43 @@
+package dmc;
+
+/**
+ * An observable of the walker population that is updated by the
+ * simulation itself, inside the same loop that decides the fate of each
+ * walker during branching.  This way the population is only walked
+ * through once per iteration no matter how many observables are being
+ * gathered.
+ * <p>
+ * Each iteration the simulation calls startIteration(), then observe()
+ * once for every walker that survives the branching (with the number of
+ * copies of it that will be in the new population), and finally
+ * endIteration().  An accumulator that does not need every iteration
+ * can decline one in startIteration(), and observe() will then not be
+ * called for it until the next iteration.
+ */
+public interface Accumulator
+{
+    /**
+     * Called before any walkers are observed in an iteration.
+     *
+     * @param simulation The simulation doing the observing.
+     * @return Whether or not to observe the walkers of this iteration.
+     */
+    public boolean startIteration(DMC simulation);
+
+    /**
+     * Observes a walker of the new population.
+     *
+     * @param x The position of the walker.
+     * @param copies The number of walkers at that position in the
+     *               new population (always at least 1).
+     */
+    public void observe(double x, int copies);
+
+    /**
+     * Called after all of the walkers of an iteration have been observed,
+     * whether or not this accumulator observed them.
+     *
+     * @param simulation The simulation doing the observing.
+     */
+    public void endIteration(DMC simulation);
+}
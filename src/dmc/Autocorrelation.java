@@ -0,0 +1,216 @@
+package dmc;
+
+import java.lang.Math;
+import java.util.Arrays;
+
+/**
+ * This class estimates the integrated autocorrelation time of a series
+ * online, one value at a time.  The series is cut into blocks; within a
+ * block the sums of the lagged products x_t * x_(t-k) are kept for k up
+ * to a maximum lag, and at the end of each block its autocorrelation
+ * time is computed.  The estimate is the median of the last few blocks,
+ * so it follows the series as the simulation settles down instead of
+ * being thrown off by the early drift for the rest of the run.
+ * <p>
+ * The integrated autocorrelation time of a block is
+ *     tau = 1/2 + sum_(k=1..M) rho(k),
+ * where the window M is the smallest lag with M &gt;= 6 tau, as suggested
+ * by Sokal in "Monte Carlo Methods in Statistical Mechanics" (1996).
+ */
+public class Autocorrelation
+{
+    /**
+     * The default largest lag to keep track of.
+     */
+    public final static int DEFAULT_MAX_LAG = 128;
+
+    /**
+     * The default number of values in a block.
+     */
+    public final static int DEFAULT_BLOCK_LENGTH = 1024;
+
+    /**
+     * The number of blocks the estimate is the median of.
+     */
+    private final static int NUM_BLOCKS = 5;
+
+    /**
+     * The largest lag kept track of.
+     */
+    private int maxLag;
+
+    /**
+     * The number of values in a block.
+     */
+    private int blockLength;
+
+    /**
+     * The last maxLag values of the series, shifted by the first
+     * value of the block.
+     */
+    private double[] history;
+
+    /**
+     * The index in history of the most recent value.
+     */
+    private int head;
+
+    /**
+     * The sums of x_t * x_(t-k) over the current block.
+     */
+    private double[] lagSums;
+
+    /**
+     * The sum of the values of the current block.
+     */
+    private double sum;
+
+    /**
+     * The first value of the current block, subtracted from all the
+     * others to keep the sums from losing precision.
+     */
+    private double shift;
+
+    /**
+     * The number of values in the current block so far.
+     */
+    private int n;
+
+    /**
+     * The number of values added.
+     */
+    private long count;
+
+    /**
+     * The autocorrelation times of the last few blocks.
+     */
+    private double[] blockTimes = new double[NUM_BLOCKS];
+
+    /**
+     * Scratch space for sorting the block times.
+     */
+    private double[] sorted = new double[NUM_BLOCKS];
+
+    /**
+     * The number of blocks done.
+     */
+    private long numBlocks;
+
+    /**
+     * The current estimate, or 0 before the first block is done.
+     */
+    private double tau;
+
+    /**
+     * Creates an estimator with the given parameters.
+     *
+     * @param maxLag The largest lag to keep track of.
+     * @param blockLength The number of values in a block, which should
+     *                    be many times the largest lag.
+     */
+    public Autocorrelation(int maxLag, int blockLength)
+    {
+	this.maxLag = maxLag;
+	this.blockLength = blockLength;
+	history = new double[maxLag];
+	lagSums = new double[maxLag];
+    }
+
+    /**
+     * Creates an estimator with the default parameters.
+     */
+    public Autocorrelation()
+    {
+	this(DEFAULT_MAX_LAG, DEFAULT_BLOCK_LENGTH);
+    }
+
+    /**
+     * Adds the next value of the series.
+     *
+     * @param x The value to add.
+     */
+    public void add(double x)
+    {
+	if (n == 0)
+	    shift = x;
+	x -= shift;
+	head = (head + 1) % maxLag;
+	history[head] = x;
+	count++;
+	n++;
+	sum += x;
+	int lags = Math.min(n, maxLag);
+	int j = head;
+	for (int k = 0; k < lags; k++) {
+	    lagSums[k] += x * history[j];
+	    if (--j < 0)
+		j = maxLag - 1;
+	}
+	if (n == blockLength)
+	    endBlock();
+    }
+
+    /**
+     * Computes the autocorrelation time of the finished block, updates
+     * the estimate and starts a new block.
+     */
+    private void endBlock()
+    {
+	double mean = sum / n;
+	double c0 = lagSums[0] / n - mean * mean;
+	double t = 0.5;
+	if (c0 > 0.0) {
+	    for (int k = 1; k < maxLag; k++) {
+		t += (lagSums[k] / (n - k) - mean * mean) / c0;
+		if (k >= 6 * t)
+		    break;
+	    }
+	    t = Math.max(0.5, Math.min(t, maxLag));
+	}
+	blockTimes[(int) (numBlocks++ % NUM_BLOCKS)] = t;
+	int m = (int) Math.min(numBlocks, NUM_BLOCKS);
+	System.arraycopy(blockTimes, 0, sorted, 0, m);
+	Arrays.sort(sorted, 0, m);
+	tau = sorted[m / 2];
+	n = 0;
+	sum = 0.0;
+	for (int k = 0; k < maxLag; k++)
+	    lagSums[k] = 0.0;
+    }
+
+    /**
+     * Returns the number of values added.
+     *
+     * @return the number of values added
+     */
+    public long getCount()
+    {
+	return count;
+    }
+
+    /**
+     * Returns whether or not a whole block has been seen, and so
+     * whether time() is an actual estimate.
+     *
+     * @return whether or not the estimate is ready
+     */
+    public boolean isReady()
+    {
+	return tau > 0.0;
+    }
+
+    /**
+     * Returns the current estimate of the integrated autocorrelation
+     * time, in units of the spacing of the series.  It is 1/2 for
+     * uncorrelated values (and before the first block is done), and at
+     * most the largest lag kept track of.
+     *
+     * @return the integrated autocorrelation time
+     */
+    public double time()
+    {
+	if (tau == 0.0)
+	    return 0.5;
+	return tau;
+    }
+}
@@ -0,0 +1,54 @@
+package dmc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one branch() of a simulation: the
+ * births and deaths of the walkers, and the accumulators observing them.
+ * Disabled unless a recording turns it on.
+ */
+@Name("dmc.Branch")
+@Label("Branch")
+@Description("Births and deaths of the walkers of a DMC simulation")
+@Category("Diffusion Monte Carlo")
+@Enabled(false)
+@StackTrace(false)
+public class BranchEvent extends Event
+{
+    /**
+     * The number of walkers before branching.
+     */
+    @Label("Walkers Before")
+    public int walkersBefore;
+
+    /**
+     * The number of walkers after branching.
+     */
+    @Label("Walkers After")
+    public int walkersAfter;
+
+    /**
+     * The number of new walkers made.
+     */
+    @Label("Births")
+    public int births;
+
+    /**
+     * The number of walkers killed.
+     */
+    @Label("Deaths")
+    public int deaths;
+
+    /**
+     * The number of walkers whose copies were cut down to the most
+     * allowed.
+     */
+    @Label("Capped")
+    public int capped;
+}
@@ -161,6 +161,56 @@ public class DMC
      * Whether or not to hold the reference energy constant.
      */ 
     public boolean refEnergyConstant;
+
+    /**
+     * The average potential energy of the walkers after the last walk.
+     */
+    public double averagePotential;
+
+    /**
+     * Counters of the work done and the time it took.
+     */
+    public EngineStats stats = new EngineStats();
+
+    /**
+     * The time taken by each iteration, and by each of its phases (as
+     * split in stats), since whatever reports them last cleared them.
+     * They are only to be read or cleared on the thread iterating.
+     */
+    public LatencyHistogram iterateLatency = new LatencyHistogram(),
+	walkLatency = new LatencyHistogram(),
+	branchLatency = new LatencyHistogram(),
+	accumulateLatency = new LatencyHistogram();
+
+    /**
+     * The accumulators that observe the walkers each iteration.
+     */
+    private Accumulator[] accumulators = new Accumulator[0];
+
+    /**
+     * Scratch space holding the accumulators that want to observe
+     * the current iteration.
+     */
+    private Accumulator[] observing = new Accumulator[0];
+
+    /**
+     * Holds the copies made while branching until they join the walkers.
+     * It is kept from one branching to the next, so its array is not made
+     * again each time.
+     */
+    private Vector<Walker> createdWalkers = new Vector<Walker>();
+
+    /**
+     * The walkers killed in branching, to be reused as copies, so that once
+     * the population has settled (about as many die as are born) branching
+     * makes no new walkers.
+     */
+    private Walker[] spareWalkers = new Walker[64];
+
+    /**
+     * The number of spare walkers.
+     */
+    private int numSpare;
     
     
     /***********
@@ -265,6 +315,40 @@ public class DMC
 	return Math.exp(-(V(w.x) - refEnergy)*dTau);
     }
 
+    /**
+     * Registers an accumulator to observe the walkers during each
+     * iteration, from the next branching step on.
+     *
+     * @param a The accumulator to add.
+     */
+    public void addAccumulator(Accumulator a)
+    {
+	Accumulator[] tmp = new Accumulator[accumulators.length + 1];
+	System.arraycopy(accumulators, 0, tmp, 0, accumulators.length);
+	tmp[accumulators.length] = a;
+	accumulators = tmp;
+	observing = new Accumulator[tmp.length];
+    }
+
+    /**
+     * Stops an accumulator from observing the walkers.  Does nothing
+     * if it was never added.
+     *
+     * @param a The accumulator to remove.
+     */
+    public void removeAccumulator(Accumulator a)
+    {
+	for (int i = 0; i < accumulators.length; i++)
+	    if (accumulators[i] == a) {
+		Accumulator[] tmp = new Accumulator[accumulators.length - 1];
+		System.arraycopy(accumulators, 0, tmp, 0, i);
+		System.arraycopy(accumulators, i + 1, tmp, i, tmp.length - i);
+		accumulators = tmp;
+		observing = new Accumulator[tmp.length];
+		return;
+	    }
+    }
+
     /**
      * This function does one complete iteration of the simulation,
      * including moving the walkers, branching them, and updating the
@@ -272,14 +356,17 @@ public class DMC
      */
     public void Iterate()
     {
+	long t0 = System.nanoTime();
 	walk();
 	branch();
 	tau += dTau;
+	stats.iterations++;
+	iterateLatency.record(System.nanoTime() - t0);
     }
 
     /**
      * This function moves each of the walkers, and updates the reference
-     * energy with respect to their new positions.
+     * energy with respect to their new positions (see updateRefEnergy()).
      *
      * @throws ArithmeticException Thrown if the number of walkers drops to 0.
      *                             A specialized exception should probably
@@ -287,6 +374,9 @@ public class DMC
      */
     public void walk()
     {
+	WalkEvent event = new WalkEvent();
+	event.begin();
+	long t0 = System.nanoTime();
 	double totalEnergy = 0.0;               // Total potential energy
 	Iterator i = walkers.iterator();
 	while (i.hasNext()) {
@@ -297,32 +387,133 @@ public class DMC
 	int n = walkers.size();
 	if (n == 0)
 	    throw new ArithmeticException();
-	double avg = totalEnergy / (double) n;
+	averagePotential = totalEnergy / (double) n;
+	event.end();
+	updateRefEnergy();
+	long t = System.nanoTime() - t0;
+	stats.walkerSteps += n;
+	stats.walkNanos += t;
+	walkLatency.record(t);
+	if (event.shouldCommit()) {
+	    event.walkers = n;
+	    event.averagePotential = averagePotential;
+	    event.commit();
+	}
+    }
+
+    /**
+     * This function updates the reference energy from the average
+     * potential energy of the walkers and how far the population is
+     * from the number of walkers desired, unless it is held constant.
+     */
+    public void updateRefEnergy()
+    {
+	RefEnergyEvent event = new RefEnergyEvent();
+	event.begin();
+	int n = walkers.size();
+	double avg = averagePotential;
 	if (!refEnergyConstant) {
 	    if (alpha < 0)
 		refEnergy = avg - ((double)(n-numWalkers))/(((double)numWalkers)*dTau);
 	    else
 		refEnergy = avg - alpha*((double)n-numWalkers)/(((double)numWalkers));
 	}
+	if (event.shouldCommit()) {
+	    event.walkers = n;
+	    event.refEnergy = refEnergy;
+	    event.averagePotential = avg;
+	    event.commit();
+	}
     }
 
     /**
      * Branches the walkers.  (Birth/Death process)
+     * <p>
+     * Each surviving walker is handed to the registered accumulators
+     * that asked to observe this iteration, along with its number of
+     * copies, so the accumulators see exactly the population left at
+     * the end of the iteration.
+     * <p>
+     * The walkers killed are kept and reused as the copies made, and the
+     * copies are added to the walkers one by one rather than with
+     * addAll() (which copies them into a new array), so that branching a
+     * settled population allocates nothing.
      */
     public void branch()
     {
-	Vector createdWalkers = new Vector();    // Temp holds new walkers
+	BranchEvent event = new BranchEvent();
+	event.begin();
+	int before = walkers.size();
+	int births = 0, deaths = 0, capped = 0, made = 0;
+	long t0 = System.nanoTime();
+	Accumulator[] all = accumulators;        // Stable for this pass
+	Accumulator[] a = observing;
+	int numObserving = 0;
+	for (int k = 0; k < all.length; k++)
+	    if (all[k].startIteration(this))
+		a[numObserving++] = all[k];
+	long t1 = System.nanoTime();
+	Vector<Walker> created = createdWalkers;
 	Iterator i = walkers.iterator();
 	while (i.hasNext()) {
 	    Walker w = (Walker) i.next();
 	    int m = (int) (Weight(w) + rvg.Uniform(0.0,1.0));
-	    if (m > 3) m = 3;
-	    if (m == 0)
+	    if (m > 3) {
+		m = 3;
+		capped++;
+	    }
+	    if (m == 0) {
 		i.remove();
-	    else 
-		for (int j = 1; j < m; j++) 
-		    createdWalkers.add(new Walker(w.x));
+		deaths++;
+		if (numSpare == spareWalkers.length) {
+		    Walker[] s = new Walker[2 * numSpare];
+		    System.arraycopy(spareWalkers, 0, s, 0, numSpare);
+		    spareWalkers = s;
+		}
+		spareWalkers[numSpare++] = w;
+	    }
+	    else {
+		births += m - 1;
+		for (int j = 1; j < m; j++) {
+		    Walker c;
+		    if (numSpare > 0) {
+			c = spareWalkers[--numSpare];
+			spareWalkers[numSpare] = null;
+			c.x = w.x;
+		    }
+		    else {
+			c = new Walker(w.x);
+			made++;
+		    }
+		    created.add(c);
+		}
+		for (int k = 0; k < numObserving; k++)
+		    a[k].observe(w.x, m);
+	    }
+	}
+	int n = created.size();
+	for (int j = 0; j < n; j++)
+	    walkers.add(created.get(j));
+	created.clear();
+	long t2 = System.nanoTime();
+	for (int k = 0; k < all.length; k++)
+	    all[k].endIteration(this);
+	long t3 = System.nanoTime();
+	stats.branchNanos += t2 - t1;
+	stats.accumulateNanos += (t1 - t0) + (t3 - t2);
+	branchLatency.record(t2 - t1);
+	accumulateLatency.record((t1 - t0) + (t3 - t2));
+	stats.births += births;
+	stats.deaths += deaths;
+	stats.capped += capped;
+	stats.walkersMade += made;
+	if (event.shouldCommit()) {
+	    event.walkersBefore = before;
+	    event.walkersAfter = walkers.size();
+	    event.births = births;
+	    event.deaths = deaths;
+	    event.capped = capped;
+	    event.commit();
 	}
-	walkers.addAll(createdWalkers);
     }
 }
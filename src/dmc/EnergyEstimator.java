@@ -0,0 +1,159 @@
+package dmc;
+
+import java.lang.Math;
+
+/**
+ * This class estimates the mean of a correlated series, such as the
+ * reference energy of a simulation whose mean is the estimate of E0,
+ * along with its statistical error.  The error comes from blocking (as
+ * described by Flyvbjerg and Petersen, J. Chem. Phys. 91, 461 (1989)):
+ * the series is averaged in blocks of 1, 2, 4, ... values, and the naive
+ * error of the block averages grows with the block size until the blocks
+ * are longer than the correlation time, where it levels off at the true
+ * error.  Every level of blocking is kept online, in constant memory.
+ * <p>
+ * The error reported is that of the coarsest level that still has
+ * enough blocks for its error to be trusted (to within about 10% with
+ * MIN_BLOCKS blocks), which is well onto the plateau for any run many
+ * times longer than the correlation time.  The integrated
+ * correlation time follows from how much larger that is than the naive
+ * error of the unblocked series.
+ */
+public class EnergyEstimator
+{
+    /**
+     * The number of blocking levels kept, enough for 2^40 values.
+     */
+    private final static int MAX_LEVELS = 40;
+
+    /**
+     * The fewest blocks a level must have for its error to be used.
+     */
+    public final static int MIN_BLOCKS = 64;
+
+    /**
+     * The sums of the block averages and their squares at each level,
+     * shifted by the first value to keep precision.
+     */
+    private double[] sums = new double[MAX_LEVELS];
+    private double[] sumSquares = new double[MAX_LEVELS];
+
+    /**
+     * The number of blocks at each level.
+     */
+    private long[] counts = new long[MAX_LEVELS];
+
+    /**
+     * The average of the first half of the next block at each level,
+     * waiting for the second half.
+     */
+    private double[] pending = new double[MAX_LEVELS];
+    private boolean[] hasPending = new boolean[MAX_LEVELS];
+
+    /**
+     * The first value, subtracted from all of them.
+     */
+    private double shift;
+
+    /**
+     * Adds the next value of the series.
+     *
+     * @param x The value.
+     */
+    public void add(double x)
+    {
+	if (counts[0] == 0)
+	    shift = x;
+	x -= shift;
+	for (int k = 0; k < MAX_LEVELS; k++) {
+	    sums[k] += x;
+	    sumSquares[k] += x * x;
+	    counts[k]++;
+	    if (!hasPending[k]) {
+		pending[k] = x;
+		hasPending[k] = true;
+		return;
+	    }
+	    x = 0.5 * (pending[k] + x);
+	    hasPending[k] = false;
+	}
+    }
+
+    /**
+     * Returns the number of values added.
+     *
+     * @return the number of values
+     */
+    public long count()
+    {
+	return counts[0];
+    }
+
+    /**
+     * Returns the mean of the values added.
+     *
+     * @return the mean, or NaN if there are none
+     */
+    public double mean()
+    {
+	return counts[0] == 0 ? Double.NaN : shift + sums[0] / counts[0];
+    }
+
+    /**
+     * Returns the naive error of the mean of the block averages at a
+     * level, as if they were independent.
+     *
+     * @param k The level, blocks of 2^k values.
+     * @return the error, or NaN if there are fewer than two blocks
+     */
+    public double error(int k)
+    {
+	long n = counts[k];
+	if (n < 2)
+	    return Double.NaN;
+	double mean = sums[k] / n;
+	double var = Math.max(0.0, (sumSquares[k] - n * mean * mean) / (n - 1));
+	return Math.sqrt(var / n);
+    }
+
+    /**
+     * Returns the error of the mean, taking the correlations into account.
+     *
+     * @return the error, or NaN if there are too few values
+     */
+    public double error()
+    {
+	int k = 0;
+	while (k + 1 < MAX_LEVELS && counts[k + 1] >= MIN_BLOCKS)
+	    k++;
+	return counts[k] >= MIN_BLOCKS ? error(k) : Double.NaN;
+    }
+
+    /**
+     * Returns the integrated correlation time of the series, in values:
+     * half the ratio of the true to the naive variance of the mean.
+     *
+     * @return the correlation time, or NaN if there are too few values
+     */
+    public double correlationTime()
+    {
+	double e0 = error(0);
+	if (!(e0 > 0.0))
+	    return Double.NaN;
+	double e = error();
+	return 0.5 * (e / e0) * (e / e0);
+    }
+
+    /**
+     * Forgets all of the values.
+     */
+    public void clear()
+    {
+	for (int k = 0; k < MAX_LEVELS; k++) {
+	    sums[k] = 0.0;
+	    sumSquares[k] = 0.0;
+	    counts[k] = 0;
+	    hasPending[k] = false;
+	}
+    }
+}
@@ -0,0 +1,133 @@
+package dmc;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counters of the work a simulation has done and the time it took, kept
+ * by the simulation as it iterates.  They are cheap enough to always be
+ * kept (a few reads of the clock per iteration), and can be read from
+ * any thread, so rates such as walker-steps per second can be worked out
+ * by reading them twice and dividing by the time between.
+ * <p>
+ * The time spent in accumulators is only the time of their start and end
+ * of iteration work; observing each walker is done inside the branching
+ * loop and counts as branching.
+ */
+public class EngineStats
+{
+    /**
+     * The estimated size of a walker in bytes: an object header and a
+     * double on a 64 bit JVM with compressed references.
+     */
+    public final static int WALKER_BYTES = 24;
+
+    /**
+     * The estimated size of a reference to a walker in bytes.
+     */
+    public final static int REFERENCE_BYTES = 4;
+
+    /**
+     * The number of iterations done.
+     */
+    public volatile long iterations;
+
+    /**
+     * The number of walker moves done, the sum of the population sizes
+     * walked.
+     */
+    public volatile long walkerSteps;
+
+    /**
+     * The number of walkers born (copies made) and killed in branching,
+     * and the number of times the copies of a walker were cut down to
+     * the most allowed.
+     */
+    public volatile long births, deaths, capped;
+
+    /**
+     * The number of copies branching had to make new, with no killed
+     * walker left to reuse.  It stops growing once the population has
+     * reached its high-water mark.
+     */
+    public volatile long walkersMade;
+
+    /**
+     * The nanoseconds spent moving the walkers.
+     */
+    public volatile long walkNanos;
+
+    /**
+     * The nanoseconds spent branching the walkers.
+     */
+    public volatile long branchNanos;
+
+    /**
+     * The nanoseconds spent starting and ending iterations of the
+     * accumulators.
+     */
+    public volatile long accumulateNanos;
+
+    /**
+     * Makes these counters a copy of others.
+     *
+     * @param s The counters to copy.
+     */
+    public void copyFrom(EngineStats s)
+    {
+	iterations = s.iterations;
+	walkerSteps = s.walkerSteps;
+	births = s.births;
+	deaths = s.deaths;
+	capped = s.capped;
+	walkersMade = s.walkersMade;
+	walkNanos = s.walkNanos;
+	branchNanos = s.branchNanos;
+	accumulateNanos = s.accumulateNanos;
+    }
+
+    /**
+     * Sets all of the counters to zero.
+     */
+    public void reset()
+    {
+	iterations = 0;
+	walkerSteps = 0;
+	births = 0;
+	deaths = 0;
+	capped = 0;
+	walkersMade = 0;
+	walkNanos = 0;
+	branchNanos = 0;
+	accumulateNanos = 0;
+    }
+
+    /**
+     * Returns the number of bytes a thread has allocated so far, if the
+     * JVM can tell.  Reading it twice gives the allocation rate of the
+     * thread in between.
+     *
+     * @param threadId The id of the thread.
+     * @return the number of bytes allocated, or -1 if not known
+     */
+    public static long allocatedBytes(long threadId)
+    {
+	ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+	if (!(bean instanceof com.sun.management.ThreadMXBean))
+	    return -1;
+	return ((com.sun.management.ThreadMXBean) bean)
+	    .getThreadAllocatedBytes(threadId);
+    }
+
+    /**
+     * Returns an estimate of the memory taken by a population of walkers
+     * held in a Vector: the walkers and the references to them.
+     *
+     * @param numWalkers The number of walkers.
+     * @return the estimated number of bytes
+     */
+    public static long populationBytes(int numWalkers)
+    {
+	return (long) numWalkers * (WALKER_BYTES + REFERENCE_BYTES);
+    }
+}
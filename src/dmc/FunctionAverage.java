@@ -0,0 +1,71 @@
+package dmc;
+
+/**
+ * An accumulator that keeps the population average of a function of
+ * the walker position for the most recent iteration.  It is meant to be
+ * used as a superclass, with the f(x) function overwritten.
+ */
+public class FunctionAverage implements Accumulator
+{
+    /**
+     * The average of f over the walkers of the last iteration.
+     */
+    public double value;
+
+    /**
+     * Running sum for the iteration in progress.
+     */
+    private double sum;
+
+    /**
+     * Running count for the iteration in progress.
+     */
+    private long n;
+
+    /**
+     * The function to average.
+     *
+     * @param x The position of a walker.
+     * @return the value of the function at the position x
+     */
+    public double f(double x)
+    {
+	return x;
+    }
+
+    /**
+     * Resets the running sum.
+     *
+     * @param simulation The simulation doing the observing.
+     * @return Always true, every iteration is observed.
+     */
+    public boolean startIteration(DMC simulation)
+    {
+	sum = 0.0;
+	n = 0;
+	return true;
+    }
+
+    /**
+     * Adds f at the walker's position to the running sum.
+     *
+     * @param x The position of the walker.
+     * @param copies The number of walkers at that position.
+     */
+    public void observe(double x, int copies)
+    {
+	sum += copies * f(x);
+	n += copies;
+    }
+
+    /**
+     * Computes the average from the running sum.
+     *
+     * @param simulation The simulation doing the observing.
+     */
+    public void endIteration(DMC simulation)
+    {
+	if (n > 0)
+	    value = sum / n;
+    }
+}
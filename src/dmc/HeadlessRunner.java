@@ -0,0 +1,255 @@
+package dmc;
+
+import java.lang.Double;
+import java.lang.Integer;
+import java.lang.InterruptedException;
+import java.lang.Long;
+import java.lang.NumberFormatException;
+import java.lang.RuntimeException;
+import java.lang.System;
+import java.lang.Thread;
+import javax.management.JMException;
+
+/**
+ * This class runs a simulation without any GUI, as fast as it will go,
+ * printing the figures of every interval (including the percentiles of
+ * the time taken by the iterations and their phases) and all of them at
+ * the end.
+ * While it runs it is registered over JMX (see SimulationMonitor), so it
+ * can be watched, paused and resumed from JConsole.
+ * <p>
+ * Usage:
+ * <pre>
+ *     java dmc.HeadlessRunner [-potential sho|linear] [-walkers N]
+ *         [-iterations N] [-warmup N] [-dtau X] [-seed N] [-report SECONDS]
+ * </pre>
+ */
+public class HeadlessRunner extends Runner implements SimulationMonitor.Owner
+{
+    /**
+     * The simulation run.
+     */
+    private DMC simulation;
+
+    /**
+     * Watches the simulation.
+     */
+    private SimulationMonitor monitor;
+
+    /**
+     * The number of iterations to run.
+     */
+    private long iterations;
+
+    /**
+     * Whether or not an interval ended since the last report.
+     */
+    private boolean reportDue;
+
+    /**
+     * Whether or not the run is over.
+     */
+    private boolean done;
+
+    /**
+     * The exception that ended the run early, if any.
+     */
+    private RuntimeException failure;
+
+    /**
+     * Creates a paused runner of a simulation.
+     *
+     * @param simulation The simulation to run.
+     * @param iterations The number of iterations to run.
+     * @param warmup The number of iterations to leave out of the E0
+     *               estimate.
+     * @param reportSeconds The seconds between reports.
+     */
+    public HeadlessRunner(DMC simulation, long iterations, int warmup,
+			  double reportSeconds)
+    {
+	super("DMC Headless");
+	this.simulation = simulation;
+	this.iterations = iterations;
+	monitor = new SimulationMonitor(simulation, this, warmup, this);
+	monitor.setInterval(reportSeconds);
+	setMode(MAX_THROUGHPUT);
+    }
+
+    /**
+     * Returns the monitor of the simulation.
+     *
+     * @return the monitor
+     */
+    public SimulationMonitor getMonitor()
+    {
+	return monitor;
+    }
+
+    /**
+     * Runs one iteration, and ends the run after the last one.
+     */
+    protected void iterate()
+    {
+	simulation.Iterate();
+	if (monitor.iterationDone())
+	    reportDue = true;
+	if (simulation.stats.iterations >= iterations) {
+	    pause();
+	    finish(null);
+	}
+    }
+
+    /**
+     * Prints the figures of the last interval if one ended.
+     */
+    protected void endBatch()
+    {
+	if (!reportDue)
+	    return;
+	reportDue = false;
+	System.out.println("iterations " + monitor.getIterations()
+			   + "  tau " + (float) monitor.getTau()
+			   + "  walkers " + monitor.getPopulation()
+			   + "  E0 " + (float) monitor.getE0Estimate()
+			   + " +- " + (float) monitor.getE0Error()
+			   + "  steps/s " 
+			   + (float) monitor.getWalkerStepsPerSecond());
+	System.out.println("    p50/p99/p99.9/max  iterate "
+			   + SimulationMonitor.latencies(monitor
+							 .getIterateLatency())
+			   + "  walk " 
+			   + SimulationMonitor.latencies(monitor
+							 .getWalkLatency())
+			   + "  branch "
+			   + SimulationMonitor.latencies(monitor
+							 .getBranchLatency()));
+    }
+
+    /**
+     * Ends the run when the simulation fails.
+     *
+     * @param e The exception thrown.
+     */
+    protected void failed(RuntimeException e)
+    {
+	finish(e);
+    }
+
+    /**
+     * Pauses the run, when asked over JMX.
+     */
+    public void requestPause()
+    {
+	pause();
+    }
+
+    /**
+     * Continues the run, when asked over JMX, unless it is over.
+     */
+    public synchronized void requestResume()
+    {
+	if (!done)
+	    resume();
+    }
+
+    /**
+     * Marks the run as over.
+     *
+     * @param e The exception that ended it, or null.
+     */
+    private synchronized void finish(RuntimeException e)
+    {
+	failure = e;
+	done = true;
+	notifyAll();
+    }
+
+    /**
+     * Runs the simulation to the end.
+     *
+     * @return the exception that ended it early, or null
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public RuntimeException runToEnd() throws InterruptedException
+    {
+	resume();
+	synchronized (this) {
+	    while (!done)
+		wait();
+	}
+	stop();
+	return failure;
+    }
+
+    /**
+     * Parses the options, runs the simulation and prints the figures.
+     *
+     * @param args The options.
+     */
+    public static void main(String[] args) throws Exception
+    {
+	String potential = "sho";
+	int walkers = DMC.DEFAULT_NUM_WALKERS;
+	long iterations = 10000;
+	int warmup = 1000;
+	double dTau = DMC.DEFAULT_DTAU;
+	long seed = DMC.DEFAULT_SEED;
+	double report = 5.0;
+	try {
+	    for (int i = 0; i < args.length; i += 2) {
+		String value = args[i + 1];
+		if (args[i].equals("-potential"))
+		    potential = value;
+		else if (args[i].equals("-walkers"))
+		    walkers = Integer.parseInt(value);
+		else if (args[i].equals("-iterations"))
+		    iterations = Long.parseLong(value);
+		else if (args[i].equals("-warmup"))
+		    warmup = Integer.parseInt(value);
+		else if (args[i].equals("-dtau"))
+		    dTau = Double.parseDouble(value);
+		else if (args[i].equals("-seed"))
+		    seed = Long.parseLong(value);
+		else if (args[i].equals("-report"))
+		    report = Double.parseDouble(value);
+		else
+		    throw new NumberFormatException(args[i]);
+	    }
+	}
+	catch (RuntimeException e) {
+	    System.err.println("usage: java dmc.HeadlessRunner"
+			       + " [-potential sho|linear] [-walkers N]"
+			       + " [-iterations N] [-warmup N] [-dtau X]"
+			       + " [-seed N] [-report SECONDS]");
+	    System.exit(2);
+	}
+
+	DMC simulation;
+	if (potential.equals("linear"))
+	    simulation = new DMC(walkers, DMC.DEFAULT_REF_ENERGY, false, dTau,
+				 DMC.DEFAULT_ALPHA, seed, DMC.INIT_DELTA_FNC,
+				 DMC.DEFAULT_DELTA_FNC_X0, 0.0);
+	else
+	    simulation = new DMC_SHO(walkers, DMC.DEFAULT_REF_ENERGY, false, 
+				     dTau, DMC.DEFAULT_ALPHA, seed, 
+				     DMC.INIT_DELTA_FNC, 
+				     DMC.DEFAULT_DELTA_FNC_X0, 0.0);
+	HeadlessRunner runner = new HeadlessRunner(simulation, iterations,
+						   warmup, report);
+	try {
+	    System.out.println("Registered as " 
+			       + runner.getMonitor().register());
+	}
+	catch (JMException e) {
+	    System.err.println("Not registered over JMX: " + e);
+	}
+	RuntimeException failure = runner.runToEnd();
+	System.out.print(runner.getMonitor().report());
+	runner.getMonitor().unregister();
+	if (failure != null) {
+	    System.err.println("The simulation failed: " + failure);
+	    System.exit(1);
+	}
+    }
+}
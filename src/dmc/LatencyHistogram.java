@@ -0,0 +1,189 @@
+package dmc;
+
+import java.lang.Long;
+import java.lang.Math;
+import java.util.Arrays;
+
+/**
+ * This class counts how long something took, each time it is done, in
+ * buckets fine enough to read off percentiles such as the 99.9th, in the
+ * manner of HdrHistogram.  The buckets are log-linear: each power of two
+ * is cut into SUB_BUCKETS equal buckets, so any time is counted to within
+ * about 1.6% of itself, from nanoseconds to hours, in a fixed array of
+ * about 2500 counts.  Recording a time is a few shifts and an increment
+ * (a few nanoseconds) and never allocates.
+ * <p>
+ * It is not thread safe: one thread records, and reading or clearing it
+ * from another is only safe while that one is not recording (such as on
+ * the same thread between two recordings).
+ */
+public class LatencyHistogram
+{
+    /**
+     * The log base 2 of the number of buckets each power of two is cut
+     * into.
+     */
+    private final static int SUB_BITS = 6;
+
+    /**
+     * The number of buckets each power of two is cut into.
+     */
+    public final static int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * The number of bits of the largest time counted as it is.
+     */
+    private final static int MAX_BITS = 44;
+
+    /**
+     * The largest time counted as it is (about 4.9 hours in nanoseconds);
+     * larger ones are counted as this.
+     */
+    public final static long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    /**
+     * The number of times in each bucket.
+     */
+    private long[] counts = new long[(MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS];
+
+    /**
+     * The number of times recorded.
+     */
+    private long count;
+
+    /**
+     * The sum of the times recorded.
+     */
+    private long total;
+
+    /**
+     * The largest time recorded.
+     */
+    private long max;
+
+    /**
+     * Records a time.
+     *
+     * @param nanos The time, in nanoseconds.
+     */
+    public void record(long nanos)
+    {
+	if (nanos < 0)
+	    nanos = 0;
+	else if (nanos > MAX_VALUE)
+	    nanos = MAX_VALUE;
+	counts[index(nanos)]++;
+	count++;
+	total += nanos;
+	if (nanos > max)
+	    max = nanos;
+    }
+
+    /**
+     * Returns the bucket a time is counted in.  Times below twice
+     * SUB_BUCKETS have a bucket each; above that, the bucket is the power
+     * of two and the SUB_BITS bits below the highest one.
+     *
+     * @param v The time, at most MAX_VALUE.
+     * @return the index of the bucket
+     */
+    private static int index(long v)
+    {
+	int shift = 63 - SUB_BITS 
+	    - Long.numberOfLeadingZeros(v | (2 * SUB_BUCKETS - 1));
+	return (shift << SUB_BITS) + (int) (v >>> shift);
+    }
+
+    /**
+     * Returns the largest time counted in a bucket.
+     *
+     * @param i The index of the bucket.
+     * @return the largest time it holds
+     */
+    private static long highest(int i)
+    {
+	int shift = Math.max(0, (i >> SUB_BITS) - 1);
+	long lowest = (long) (i - (shift << SUB_BITS)) << shift;
+	return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Returns the number of times recorded.
+     *
+     * @return the count
+     */
+    public long getCount()
+    {
+	return count;
+    }
+
+    /**
+     * Returns the largest time recorded.
+     *
+     * @return the largest time, or 0 if none were recorded
+     */
+    public long getMax()
+    {
+	return max;
+    }
+
+    /**
+     * Returns the mean of the times recorded.
+     *
+     * @return the mean, or 0 if none were recorded
+     */
+    public double getMean()
+    {
+	return count > 0 ? (double) total / count : 0.0;
+    }
+
+    /**
+     * Returns the time that the given percentage of the times recorded
+     * were at most, to within the width of its bucket (but never more than
+     * the largest time).
+     *
+     * @param percent The percentage, such as 99.9.
+     * @return the percentile, or 0 if none were recorded
+     */
+    public long getPercentile(double percent)
+    {
+	if (count == 0)
+	    return 0;
+	long rank = (long) Math.ceil(percent / 100.0 * count);
+	if (rank < 1)
+	    rank = 1;
+	long seen = 0;
+	for (int i = 0; i < counts.length; i++) {
+	    seen += counts[i];
+	    if (seen >= rank)
+		return Math.min(highest(i), max);
+	}
+	return max;
+    }
+
+    /**
+     * Adds in all of the times of another histogram.
+     *
+     * @param h The histogram to add.
+     */
+    public void add(LatencyHistogram h)
+    {
+	for (int i = 0; i < counts.length; i++)
+	    counts[i] += h.counts[i];
+	count += h.count;
+	total += h.total;
+	if (h.max > max)
+	    max = h.max;
+    }
+
+    /**
+     * Forgets all of the times recorded.
+     */
+    public void clear()
+    {
+	Arrays.fill(counts, 0);
+	count = 0;
+	total = 0;
+	max = 0;
+    }
+}
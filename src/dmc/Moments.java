@@ -0,0 +1,76 @@
+package dmc;
+
+import java.lang.Math;
+
+/**
+ * An accumulator that keeps the mean and variance of the walker
+ * positions of the most recent iteration.
+ */
+public class Moments implements Accumulator
+{
+    /**
+     * The number of walkers observed in the last iteration.
+     */
+    public long count;
+
+    /**
+     * The mean position of the walkers in the last iteration.
+     */
+    public double mean;
+
+    /**
+     * The variance of the positions of the walkers in the last iteration.
+     */
+    public double variance;
+
+    /**
+     * Running sums for the iteration in progress.
+     */
+    private double sum, sumSquares;
+
+    /**
+     * Running count for the iteration in progress.
+     */
+    private long n;
+
+    /**
+     * Resets the running sums.
+     *
+     * @param simulation The simulation doing the observing.
+     * @return Always true, every iteration is observed.
+     */
+    public boolean startIteration(DMC simulation)
+    {
+	sum = 0.0;
+	sumSquares = 0.0;
+	n = 0;
+	return true;
+    }
+
+    /**
+     * Adds a walker to the running sums.
+     *
+     * @param x The position of the walker.
+     * @param copies The number of walkers at that position.
+     */
+    public void observe(double x, int copies)
+    {
+	sum += copies * x;
+	sumSquares += copies * x * x;
+	n += copies;
+    }
+
+    /**
+     * Computes the moments from the running sums.
+     *
+     * @param simulation The simulation doing the observing.
+     */
+    public void endIteration(DMC simulation)
+    {
+	count = n;
+	if (n == 0)
+	    return;
+	mean = sum / n;
+	variance = Math.max(0.0, sumSquares / n - mean * mean);
+    }
+}
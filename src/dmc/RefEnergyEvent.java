@@ -0,0 +1,40 @@
+package dmc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one update of the reference energy of
+ * a simulation.  Disabled unless a recording turns it on.
+ */
+@Name("dmc.RefEnergyUpdate")
+@Label("Reference Energy Update")
+@Description("Feedback of the population size into the reference energy")
+@Category("Diffusion Monte Carlo")
+@Enabled(false)
+@StackTrace(false)
+public class RefEnergyEvent extends Event
+{
+    /**
+     * The number of walkers.
+     */
+    @Label("Walkers")
+    public int walkers;
+
+    /**
+     * The reference energy after the update.
+     */
+    @Label("Reference Energy")
+    public double refEnergy;
+
+    /**
+     * The average potential energy of the walkers.
+     */
+    @Label("Average Potential")
+    public double averagePotential;
+}
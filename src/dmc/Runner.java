@@ -0,0 +1,416 @@
+package dmc;
+
+import java.lang.InterruptedException;
+import java.lang.Runnable;
+import java.lang.RuntimeException;
+import java.lang.System;
+import java.lang.Thread;
+import java.util.Vector;
+
+/**
+ * This class runs a simulation on a thread of its own, so that the
+ * simulation and whatever shows it (such as the GUI, on the Swing event
+ * thread) do not take turns.  The iterations are run in batches, and how
+ * big a batch is depends on the mode:
+ * <ul>
+ * <li>PACED runs a fixed number of iterations, then waits a fixed delay.
+ * <li>FRAME_RATE runs as many iterations as fit in one frame of a target
+ *     frame rate, with no delay, so a batch ends about once per frame.
+ * <li>MAX_THROUGHPUT does the same with a budget of MAX_THROUGHPUT_BUDGET,
+ *     so that whatever is done per batch is done only once in a while.
+ * </ul>
+ * To fit iterations in a budget, the cost of each iteration is measured
+ * as it runs and averaged (exponentially weighted, so it follows the
+ * cost as the population grows or shrinks), and the batch ends when the
+ * next iteration would likely run past the budget.
+ * <p>
+ * The thread is started once and parks itself while paused.  pause()
+ * does not return until the thread has parked, which happens after at
+ * most the iteration in progress, so once it returns the simulation can
+ * be looked at or changed freely until resume().
+ * <p>
+ * Nothing is locked while iterating.  Anything else that must change the
+ * state the iterations change is handed to invoke(), which runs it on the
+ * simulation thread between iterations (or right away, if the thread is
+ * parked).
+ * <p>
+ * A subclass says what an iteration is, by overriding iterate().
+ */
+public abstract class Runner implements Runnable
+{
+    /**
+     * Runs a fixed number of iterations per batch, with a fixed delay.
+     */
+    public final static int PACED = 0;
+
+    /**
+     * Runs as many iterations per batch as fit in one frame.
+     */
+    public final static int FRAME_RATE = 1;
+
+    /**
+     * Runs as many iterations per batch as fit in MAX_THROUGHPUT_BUDGET.
+     */
+    public final static int MAX_THROUGHPUT = 2;
+
+    /**
+     * The nanosecond budget of a batch in MAX_THROUGHPUT mode.
+     */
+    public final static long MAX_THROUGHPUT_BUDGET = 1000000000L;
+
+    /**
+     * The weight of each new measurement in the average iteration cost.
+     */
+    private final static double COST_WEIGHT = 0.125;
+
+    /**
+     * The thread running the simulation.
+     */
+    private Thread thread;
+
+    /**
+     * Whether or not the thread should park itself.
+     */
+    private volatile boolean paused = true;
+
+    /**
+     * Whether or not the thread should end.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Whether or not the thread is parked (or ended).
+     */
+    private boolean parked;
+
+    /**
+     * The millisecond delay between batches.
+     */
+    private volatile int delay;
+
+    /**
+     * The number of iterations in a batch.
+     */
+    private volatile int batch = 1;
+
+    /**
+     * The mode, PACED, FRAME_RATE or MAX_THROUGHPUT.
+     */
+    private volatile int mode = PACED;
+
+    /**
+     * The nanosecond budget of a batch in FRAME_RATE mode.
+     */
+    private volatile long frameNanos = 1000000000L / 30;
+
+    /**
+     * The average nanosecond cost of an iteration, or 0 before the first.
+     */
+    private volatile double cost;
+
+    /**
+     * The tasks waiting to be run between iterations.
+     */
+    private Vector<Runnable> tasks = new Vector<Runnable>();
+
+    /**
+     * Creates a paused runner, and starts its thread.  The thread only
+     * parks until resume() is called, so a subclass may finish setting
+     * itself up after this.
+     *
+     * @param name The name of the thread.
+     */
+    public Runner(String name)
+    {
+	thread = new Thread(this, name);
+	thread.setDaemon(true);
+	thread.start();
+    }
+
+    /**
+     * Runs one iteration.
+     */
+    protected abstract void iterate();
+
+    /**
+     * Called after each batch of iterations.  Does nothing unless
+     * overridden.
+     */
+    protected void endBatch()
+    {
+    }
+
+    /**
+     * Called when an iteration throws an exception, after the runner has
+     * paused itself.  Does nothing unless overridden.
+     *
+     * @param e The exception thrown.
+     */
+    protected void failed(RuntimeException e)
+    {
+    }
+
+    /**
+     * Sets the millisecond delay between batches.
+     *
+     * @param ms The delay, 0 for none.
+     */
+    public void setDelay(int ms)
+    {
+	delay = ms;
+    }
+
+    /**
+     * Sets the number of iterations in a batch.
+     *
+     * @param n The number of iterations.
+     */
+    public void setBatch(int n)
+    {
+	batch = n;
+    }
+
+    /**
+     * Sets the mode.
+     *
+     * @param mode PACED, FRAME_RATE or MAX_THROUGHPUT.
+     */
+    public void setMode(int mode)
+    {
+	this.mode = mode;
+    }
+
+    /**
+     * Returns the mode.
+     *
+     * @return PACED, FRAME_RATE or MAX_THROUGHPUT
+     */
+    public int getMode()
+    {
+	return mode;
+    }
+
+    /**
+     * Sets the frame rate targeted in FRAME_RATE mode.
+     *
+     * @param fps The number of frames per second.
+     */
+    public void setFrameRate(double fps)
+    {
+	frameNanos = (long) (1.0e9 / fps);
+    }
+
+    /**
+     * Returns the average cost of an iteration, as measured in the
+     * FRAME_RATE and MAX_THROUGHPUT modes.
+     *
+     * @return the nanoseconds per iteration, or 0 if not yet measured
+     */
+    public double getIterationCost()
+    {
+	return cost;
+    }
+
+    /**
+     * Returns the id of the thread running the simulation.
+     *
+     * @return the id of the thread
+     */
+    public long getThreadId()
+    {
+	return thread.getId();
+    }
+
+    /**
+     * Returns whether or not the runner is paused.
+     *
+     * @return whether or not the runner is paused
+     */
+    public boolean isPaused()
+    {
+	return paused;
+    }
+
+    /**
+     * Starts or continues running.
+     */
+    public synchronized void resume()
+    {
+	paused = false;
+	notifyAll();
+    }
+
+    /**
+     * Pauses, and waits for the iteration in progress to finish.  If
+     * called from an iteration it only marks the runner paused.
+     */
+    public synchronized void pause()
+    {
+	paused = true;
+	notifyAll();
+	if (Thread.currentThread() == thread)
+	    return;
+	while (!parked && thread.isAlive())
+	    try {
+		wait();
+	    }
+	    catch (InterruptedException ie) {
+		Thread.currentThread().interrupt();
+		return;
+	    }
+    }
+
+    /**
+     * Runs a task on the simulation thread before its next iteration, or
+     * right away on the calling thread if the simulation thread is parked
+     * (it cannot go on until the task is done).
+     *
+     * @param task The task to run.
+     */
+    public synchronized void invoke(Runnable task)
+    {
+	if (parked)
+	    task.run();
+	else
+	    tasks.add(task);
+    }
+
+    /**
+     * Runs the tasks waiting to be run.
+     */
+    private void runTasks()
+    {
+	Object[] t;
+	synchronized (this) {
+	    t = tasks.toArray();
+	    tasks.clear();
+	}
+	for (int i = 0; i < t.length; i++)
+	    ((Runnable) t[i]).run();
+    }
+
+    /**
+     * Runs a batch of the set number of iterations.
+     *
+     * @return the number of iterations run
+     */
+    private int runPaced()
+    {
+	int n = batch;
+	int i;
+	for (i = 0; i < n && !paused; i++) {
+	    if (!tasks.isEmpty())
+		runTasks();
+	    iterate();
+	}
+	return i;
+    }
+
+    /**
+     * Runs as many iterations as fit in a budget, but at least one unless
+     * paused, measuring the cost of each.
+     *
+     * @param budget The nanoseconds the batch may take.
+     * @return the number of iterations run
+     */
+    private int runBudget(long budget)
+    {
+	long now = System.nanoTime();
+	long deadline = now + budget;
+	double c = cost;
+	int i = 0;
+	while (!paused) {
+	    if (!tasks.isEmpty())
+		runTasks();
+	    iterate();
+	    i++;
+	    long t = System.nanoTime();
+	    c = c > 0.0 ? c + COST_WEIGHT * ((t - now) - c) : t - now;
+	    now = t;
+	    if (now + c >= deadline)
+		break;
+	}
+	cost = c;
+	return i;
+    }
+
+    /**
+     * Pauses and ends the thread for good.
+     */
+    public void stop()
+    {
+	pause();
+	synchronized (this) {
+	    stopped = true;
+	    notifyAll();
+	}
+    }
+
+    /**
+     * Waits for the thread to end, after stop().
+     */
+    public void join()
+    {
+	try {
+	    thread.join();
+	}
+	catch (InterruptedException ie) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    /**
+     * The loop of the thread: park while paused, otherwise run a batch and
+     * wait for the delay.
+     */
+    public void run()
+    {
+	while (true) {
+	    synchronized (this) {
+		while (paused && !stopped) {
+		    if (!tasks.isEmpty())
+			runTasks();
+		    parked = true;
+		    notifyAll();
+		    try {
+			wait();
+		    }
+		    catch (InterruptedException ie) {
+		    }
+		}
+		if (stopped)
+		    break;
+		parked = false;
+	    }
+	    try {
+		int m = mode;
+		int i;
+		if (m == PACED)
+		    i = runPaced();
+		else
+		    i = runBudget(m == FRAME_RATE ? frameNanos 
+				  : MAX_THROUGHPUT_BUDGET);
+		if (i > 0)
+		    endBatch();
+	    }
+	    catch (RuntimeException e) {
+		paused = true;
+		failed(e);
+		continue;
+	    }
+	    if (mode == PACED && delay > 0)
+		synchronized (this) {
+		    if (!paused)
+			try {
+			    wait(delay);
+			}
+			catch (InterruptedException ie) {
+			}
+		}
+	}
+	synchronized (this) {
+	    parked = true;
+	    notifyAll();
+	}
+    }
+}
@@ -0,0 +1,174 @@
+package dmc;
+
+/**
+ * The management interface of a running simulation, for watching and
+ * steering it from JConsole or any other JMX client.  See
+ * SimulationMonitor.
+ */
+public interface SimulationMXBean
+{
+    /**
+     * Returns the simulation time.
+     *
+     * @return tau
+     */
+    public double getTau();
+
+    /**
+     * Returns the number of iterations done.
+     *
+     * @return the number of iterations
+     */
+    public long getIterations();
+
+    /**
+     * Returns the number of walkers.
+     *
+     * @return the population size
+     */
+    public int getPopulation();
+
+    /**
+     * Returns the reference energy.
+     *
+     * @return the reference energy
+     */
+    public double getRefEnergy();
+
+    /**
+     * Returns the estimate of E0: the mean reference energy since the
+     * warmup.
+     *
+     * @return the E0 estimate
+     */
+    public double getE0Estimate();
+
+    /**
+     * Returns the statistical error of the E0 estimate.
+     *
+     * @return the error, or NaN while there are too few iterations
+     */
+    public double getE0Error();
+
+    /**
+     * Returns the integrated correlation time of the reference energy.
+     *
+     * @return the correlation time in iterations
+     */
+    public double getCorrelationTime();
+
+    /**
+     * Returns the number of walkers born in branching.
+     *
+     * @return the number of copies made
+     */
+    public long getBirths();
+
+    /**
+     * Returns the number of walkers killed in branching.
+     *
+     * @return the number of deaths
+     */
+    public long getDeaths();
+
+    /**
+     * Returns the number of times a walker's copies were cut down to the
+     * most allowed.
+     *
+     * @return the number of capped walkers
+     */
+    public long getCapped();
+
+    /**
+     * Returns the walker-steps per second over the last interval.
+     *
+     * @return the throughput
+     */
+    public double getWalkerStepsPerSecond();
+
+    /**
+     * Returns the iterations per second over the last interval.
+     *
+     * @return the iteration rate
+     */
+    public double getIterationsPerSecond();
+
+    /**
+     * Returns the bytes per second allocated by the simulation thread over
+     * the last interval.
+     *
+     * @return the allocation rate, or -1 if not known
+     */
+    public double getAllocationRate();
+
+    /**
+     * Returns the estimated memory taken by the population.
+     *
+     * @return the number of bytes
+     */
+    public long getPopulationBytes();
+
+    /**
+     * Returns the estimated memory taken by each walker.
+     *
+     * @return the number of bytes
+     */
+    public int getBytesPerWalker();
+
+    /**
+     * Returns the nanoseconds taken by the iterations over the last
+     * interval.
+     *
+     * @return the 50th, 99th and 99.9th percentile and the maximum
+     */
+    public long[] getIterateLatency();
+
+    /**
+     * Returns the nanoseconds taken by the walks over the last interval.
+     *
+     * @return the 50th, 99th and 99.9th percentile and the maximum
+     */
+    public long[] getWalkLatency();
+
+    /**
+     * Returns the nanoseconds taken by the branchings over the last
+     * interval.
+     *
+     * @return the 50th, 99th and 99.9th percentile and the maximum
+     */
+    public long[] getBranchLatency();
+
+    /**
+     * Returns the nanoseconds taken by the accumulators over the last
+     * interval.
+     *
+     * @return the 50th, 99th and 99.9th percentile and the maximum
+     */
+    public long[] getAccumulateLatency();
+
+    /**
+     * Returns whether or not the simulation is paused.
+     *
+     * @return whether or not it is paused
+     */
+    public boolean isPaused();
+
+    /**
+     * Asks for the simulation to be paused.
+     */
+    public void pause();
+
+    /**
+     * Asks for the simulation to be continued, which is refused if the
+     * run has failed or ended, or was paused other than over JMX.
+     */
+    public void resume();
+
+    /**
+     * Returns all of the figures, taken on the simulation thread between
+     * two iterations so they all agree with each other.
+     *
+     * @return the figures, one "name = value" per line
+     */
+    public String snapshot();
+}
@@ -0,0 +1,585 @@
+package dmc;
+
+import java.lang.InterruptedException;
+import java.lang.Math;
+import java.lang.Runnable;
+import java.lang.StringBuffer;
+import java.lang.System;
+import java.lang.Thread;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class watches a simulation run by a Runner and makes it available
+ * over JMX, registered as "dmc:type=Simulation,id=N" with N counting the
+ * monitors registered.  The runner must call iterationDone() after each
+ * iteration; that keeps the E0 estimate and copies the figures into
+ * volatile fields, so they can be read from any thread at any time, and
+ * at the end of every interval (a second, unless set otherwise) works out
+ * the rates and the percentiles of the time taken by the iterations and
+ * their phases over the interval.
+ * <p>
+ * Pausing and resuming do not go straight to the runner but are asked of
+ * the monitor's owner (such as the GUI), which runs the simulation and
+ * knows whether it is safe to: the owner may carry them out later, on a
+ * thread of its own, or refuse them, as it should a resume of a run that
+ * has failed or that its user paused to change.
+ */
+public class SimulationMonitor implements SimulationMXBean
+{
+    /**
+     * The default number of nanoseconds the rates are worked out over.
+     */
+    private final static long DEFAULT_INTERVAL = 1000000000L;
+
+    /**
+     * The percentiles of the latencies reported, besides the maximum.
+     */
+    private final static double[] PERCENTILES = { 50.0, 99.0, 99.9 };
+
+    /**
+     * The most milliseconds snapshot() waits for the simulation thread.
+     */
+    private final static long SNAPSHOT_TIMEOUT = 10000;
+
+    /**
+     * The number of monitors registered so far.
+     */
+    private static int numRegistered;
+
+    /**
+     * The simulation watched.
+     */
+    private DMC simulation;
+
+    /**
+     * The runner running it.
+     */
+    private Runner runner;
+
+    /**
+     * The one pausing and resuming is asked of.
+     */
+    private Owner owner;
+
+    /**
+     * The number of iterations left out of the E0 estimate.
+     */
+    private int warmup;
+
+    /**
+     * Keeps the E0 estimate and its error.
+     */
+    private EnergyEstimator estimator = new EnergyEstimator();
+
+    /**
+     * The name it is registered under, or null.
+     */
+    private ObjectName name;
+
+    /**
+     * The figures as of the last iteration.
+     */
+    private volatile double tau, refEnergy, e0, e0Error, correlationTime;
+    private volatile long iterations;
+    private volatile int population;
+
+    /**
+     * The rates as of the last time they were worked out.
+     */
+    private volatile double walkerStepsPerSecond, iterationsPerSecond;
+    private volatile double allocationRate = -1;
+
+    /**
+     * The 50th, 99th and 99.9th percentile and the maximum nanoseconds
+     * taken by the iterations, the walks, the branchings and the
+     * accumulators over the last interval.  Each array is replaced, never
+     * changed.
+     */
+    private volatile long[] iterateLatency = new long[4],
+	walkLatency = new long[4], branchLatency = new long[4],
+	accumulateLatency = new long[4];
+
+    /**
+     * The number of nanoseconds the rates are worked out over.
+     */
+    private volatile long interval = DEFAULT_INTERVAL;
+
+    /**
+     * The counters, time and bytes allocated when the rates were last
+     * worked out.
+     */
+    private EngineStats lastStats = new EngineStats();
+    private long lastNanoTime, lastAllocated;
+
+    /**
+     * Creates a monitor of a simulation.
+     *
+     * @param simulation The simulation to watch.
+     * @param runner The runner running it.
+     * @param warmup The number of iterations to leave out of the E0
+     *               estimate.
+     * @param owner The one to ask to pause and resume the simulation.
+     */
+    public SimulationMonitor(DMC simulation, Runner runner, int warmup,
+			     Owner owner)
+    {
+	this.simulation = simulation;
+	this.runner = runner;
+	this.owner = owner;
+	this.warmup = warmup;
+	tau = simulation.tau;
+	refEnergy = simulation.refEnergy;
+	population = simulation.walkers.size();
+	e0 = Double.NaN;
+	e0Error = Double.NaN;
+	correlationTime = Double.NaN;
+    }
+
+    /**
+     * Registers the monitor with the platform MBean server.
+     *
+     * @return the name it is registered under
+     * @throws JMException if it cannot be registered
+     */
+    public synchronized ObjectName register() throws JMException
+    {
+	int id;
+	synchronized (SimulationMonitor.class) {
+	    id = ++numRegistered;
+	}
+	name = new ObjectName("dmc:type=Simulation,id=" + id);
+	ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+	return name;
+    }
+
+    /**
+     * Unregisters the monitor, if it is registered.
+     */
+    public synchronized void unregister()
+    {
+	if (name == null)
+	    return;
+	MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	try {
+	    if (server.isRegistered(name))
+		server.unregisterMBean(name);
+	}
+	catch (JMException e) {
+	}
+	name = null;
+    }
+
+    /**
+     * Sets how long the intervals the rates and latencies are worked out
+     * over are.
+     *
+     * @param seconds The length of an interval.
+     */
+    public void setInterval(double seconds)
+    {
+	interval = (long) (seconds * 1.0e9);
+    }
+
+    /**
+     * Takes in the iteration just done.  Must be called on the simulation
+     * thread.
+     *
+     * @return whether or not new rates and latencies were just worked out
+     */
+    public boolean iterationDone()
+    {
+	EngineStats s = simulation.stats;
+	long n = s.iterations;
+	tau = simulation.tau;
+	refEnergy = simulation.refEnergy;
+	population = simulation.walkers.size();
+	iterations = n;
+	if (n > warmup) {
+	    estimator.add(simulation.refEnergy);
+	    e0 = estimator.mean();
+	    e0Error = estimator.error();
+	    correlationTime = estimator.correlationTime();
+	}
+	long now = System.nanoTime();
+	if (now - lastNanoTime < interval)
+	    return false;
+	long allocated = EngineStats.allocatedBytes(runner.getThreadId());
+	boolean first = lastNanoTime == 0;
+	if (!first) {
+	    double seconds = (now - lastNanoTime) / 1.0e9;
+	    walkerStepsPerSecond 
+		= (s.walkerSteps - lastStats.walkerSteps) / seconds;
+	    iterationsPerSecond = (n - lastStats.iterations) / seconds;
+	    allocationRate = allocated >= 0 && lastAllocated >= 0
+		? (allocated - lastAllocated) / seconds : -1;
+	    iterateLatency = summarize(simulation.iterateLatency);
+	    walkLatency = summarize(simulation.walkLatency);
+	    branchLatency = summarize(simulation.branchLatency);
+	    accumulateLatency = summarize(simulation.accumulateLatency);
+	}
+	simulation.iterateLatency.clear();
+	simulation.walkLatency.clear();
+	simulation.branchLatency.clear();
+	simulation.accumulateLatency.clear();
+	lastStats.copyFrom(s);
+	lastNanoTime = now;
+	lastAllocated = allocated;
+	return !first;
+    }
+
+    /**
+     * Returns the percentiles and maximum of a histogram of latencies.
+     *
+     * @param h The histogram.
+     * @return the 50th, 99th and 99.9th percentile and the maximum
+     */
+    private static long[] summarize(LatencyHistogram h)
+    {
+	long[] l = new long[PERCENTILES.length + 1];
+	for (int i = 0; i < PERCENTILES.length; i++)
+	    l[i] = h.getPercentile(PERCENTILES[i]);
+	l[PERCENTILES.length] = h.getMax();
+	return l;
+    }
+
+    /**
+     * Returns the simulation time.
+     *
+     * @return tau
+     */
+    public double getTau()
+    {
+	return tau;
+    }
+
+    /**
+     * Returns the number of iterations done.
+     *
+     * @return the number of iterations
+     */
+    public long getIterations()
+    {
+	return iterations;
+    }
+
+    /**
+     * Returns the number of walkers.
+     *
+     * @return the population size
+     */
+    public int getPopulation()
+    {
+	return population;
+    }
+
+    /**
+     * Returns the reference energy.
+     *
+     * @return the reference energy
+     */
+    public double getRefEnergy()
+    {
+	return refEnergy;
+    }
+
+    /**
+     * Returns the estimate of E0: the mean reference energy since the
+     * warmup.
+     *
+     * @return the E0 estimate
+     */
+    public double getE0Estimate()
+    {
+	return e0;
+    }
+
+    /**
+     * Returns the statistical error of the E0 estimate.
+     *
+     * @return the error, or NaN while there are too few iterations
+     */
+    public double getE0Error()
+    {
+	return e0Error;
+    }
+
+    /**
+     * Returns the integrated correlation time of the reference energy.
+     *
+     * @return the correlation time in iterations
+     */
+    public double getCorrelationTime()
+    {
+	return correlationTime;
+    }
+
+    /**
+     * Returns the number of walkers born in branching.
+     *
+     * @return the number of copies made
+     */
+    public long getBirths()
+    {
+	return simulation.stats.births;
+    }
+
+    /**
+     * Returns the number of walkers killed in branching.
+     *
+     * @return the number of deaths
+     */
+    public long getDeaths()
+    {
+	return simulation.stats.deaths;
+    }
+
+    /**
+     * Returns the number of times a walker's copies were cut down to the
+     * most allowed.
+     *
+     * @return the number of capped walkers
+     */
+    public long getCapped()
+    {
+	return simulation.stats.capped;
+    }
+
+    /**
+     * Returns the walker-steps per second over the last interval.
+     *
+     * @return the throughput
+     */
+    public double getWalkerStepsPerSecond()
+    {
+	return walkerStepsPerSecond;
+    }
+
+    /**
+     * Returns the iterations per second over the last interval.
+     *
+     * @return the iteration rate
+     */
+    public double getIterationsPerSecond()
+    {
+	return iterationsPerSecond;
+    }
+
+    /**
+     * Returns the bytes per second allocated by the simulation thread over
+     * the last interval.
+     *
+     * @return the allocation rate, or -1 if not known
+     */
+    public double getAllocationRate()
+    {
+	return allocationRate;
+    }
+
+    /**
+     * Returns the estimated memory taken by the population.
+     *
+     * @return the number of bytes
+     */
+    public long getPopulationBytes()
+    {
+	return EngineStats.populationBytes(population);
+    }
+
+    /**
+     * Returns the estimated memory taken by each walker.
+     *
+     * @return the number of bytes
+     */
+    public int getBytesPerWalker()
+    {
+	return EngineStats.WALKER_BYTES + EngineStats.REFERENCE_BYTES;
+    }
+
+    /**
+     * Returns the nanoseconds taken by the iterations over the last
+     * interval.
+     *
+     * @return the 50th, 99th and 99.9th percentile and the maximum
+     */
+    public long[] getIterateLatency()
+    {
+	return iterateLatency.clone();
+    }
+
+    /**
+     * Returns the nanoseconds taken by the walks over the last interval.
+     *
+     * @return the 50th, 99th and 99.9th percentile and the maximum
+     */
+    public long[] getWalkLatency()
+    {
+	return walkLatency.clone();
+    }
+
+    /**
+     * Returns the nanoseconds taken by the branchings over the last
+     * interval.
+     *
+     * @return the 50th, 99th and 99.9th percentile and the maximum
+     */
+    public long[] getBranchLatency()
+    {
+	return branchLatency.clone();
+    }
+
+    /**
+     * Returns the nanoseconds taken by the accumulators over the last
+     * interval.
+     *
+     * @return the 50th, 99th and 99.9th percentile and the maximum
+     */
+    public long[] getAccumulateLatency()
+    {
+	return accumulateLatency.clone();
+    }
+
+    /**
+     * Returns whether or not the simulation is paused.
+     *
+     * @return whether or not it is paused
+     */
+    public boolean isPaused()
+    {
+	return runner.isPaused();
+    }
+
+    /**
+     * Asks the owner to pause the simulation.
+     */
+    public void pause()
+    {
+	owner.requestPause();
+    }
+
+    /**
+     * Asks the owner to continue the simulation, which it refuses if the
+     * run has failed or was paused by its user.
+     */
+    public void resume()
+    {
+	owner.requestResume();
+    }
+
+    /**
+     * Returns all of the figures, taken on the simulation thread between
+     * two iterations so they all agree with each other.
+     *
+     * @return the figures, one "name = value" per line
+     */
+    public String snapshot()
+    {
+	final String[] result = new String[1];
+	runner.invoke(new Runnable() {
+		public void run()
+		{
+		    String r = report();
+		    synchronized (result) {
+			result[0] = r;
+			result.notifyAll();
+		    }
+		}
+	    });
+	synchronized (result) {
+	    long end = System.currentTimeMillis() + SNAPSHOT_TIMEOUT;
+	    long left = SNAPSHOT_TIMEOUT;
+	    while (result[0] == null && left > 0) {
+		try {
+		    result.wait(left);
+		}
+		catch (InterruptedException ie) {
+		    Thread.currentThread().interrupt();
+		    break;
+		}
+		left = end - System.currentTimeMillis();
+	    }
+	    // A simulation thread that is stuck is reported as it stands:
+	    return result[0] != null ? result[0] : report();
+	}
+    }
+
+    /**
+     * Returns all of the figures, one "name = value" per line.
+     *
+     * @return the figures
+     */
+    public String report()
+    {
+	StringBuffer b = new StringBuffer();
+	line(b, "tau", Double.toString(tau));
+	line(b, "iterations", Long.toString(iterations));
+	line(b, "population", Integer.toString(population));
+	line(b, "refEnergy", Double.toString(refEnergy));
+	line(b, "e0Estimate", Double.toString(e0));
+	line(b, "e0Error", Double.toString(e0Error));
+	line(b, "correlationTime", Double.toString(correlationTime));
+	line(b, "births", Long.toString(getBirths()));
+	line(b, "deaths", Long.toString(getDeaths()));
+	line(b, "capped", Long.toString(getCapped()));
+	line(b, "walkerStepsPerSecond", Double.toString(walkerStepsPerSecond));
+	line(b, "iterationsPerSecond", Double.toString(iterationsPerSecond));
+	line(b, "allocationRate", Double.toString(allocationRate));
+	line(b, "populationBytes", Long.toString(getPopulationBytes()));
+	line(b, "iterateLatency", latencies(iterateLatency));
+	line(b, "walkLatency", latencies(walkLatency));
+	line(b, "branchLatency", latencies(branchLatency));
+	line(b, "accumulateLatency", latencies(accumulateLatency));
+	return b.toString();
+    }
+
+    /**
+     * Returns the percentiles and maximum of a latency as text.
+     *
+     * @param l The 50th, 99th and 99.9th percentile and the maximum, in
+     *          nanoseconds.
+     * @return them in microseconds, as "p50/p99/p99.9/max"
+     */
+    public static String latencies(long[] l)
+    {
+	StringBuffer b = new StringBuffer();
+	for (int i = 0; i < l.length; i++) {
+	    if (i > 0)
+		b.append('/');
+	    b.append(Math.round(l[i] / 100.0) / 10.0);
+	}
+	return b.append(" us").toString();
+    }
+
+    /**
+     * Adds a line of the report.
+     *
+     * @param b Where to add it.
+     * @param name The name of the figure.
+     * @param value The value of the figure.
+     */
+    private static void line(StringBuffer b, String name, String value)
+    {
+	b.append(name).append(" = ").append(value).append('\n');
+    }
+
+    /**
+     * The one that runs a monitored simulation, which decides whether
+     * and when it is paused or resumed over JMX.
+     */
+    public interface Owner
+    {
+	/**
+	 * Asks for the simulation to be paused.
+	 */
+	public void requestPause();
+
+	/**
+	 * Asks for the simulation to be continued.  It is refused if the
+	 * run has failed or ended, or was paused other than over JMX.
+	 */
+	public void requestResume();
+    }
+}
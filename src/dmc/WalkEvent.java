@@ -0,0 +1,35 @@
+package dmc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one walk() of a simulation: moving
+ * every walker.  Like the other simulation events it is disabled unless
+ * a recording turns it on, and then costs next to nothing.
+ */
+@Name("dmc.Walk")
+@Label("Walk")
+@Description("Moving every walker of a DMC simulation")
+@Category("Diffusion Monte Carlo")
+@Enabled(false)
+@StackTrace(false)
+public class WalkEvent extends Event
+{
+    /**
+     * The number of walkers moved.
+     */
+    @Label("Walkers")
+    public int walkers;
+
+    /**
+     * The average potential energy of the walkers after moving.
+     */
+    @Label("Average Potential")
+    public double averagePotential;
+}
@@ -43,6 +43,8 @@ public class Graph extends JPanel implements Serializable{
 	public final static int VERTICAL = 0, HORIZONTAL = 1;
 	//Objects
 	private DecimalFormat decimalFormat = new DecimalFormat();
+	//Pixel buffers for the batch drawing methods, reused between calls
+	private int[] xPixels = new int[0], yPixels = new int[0];
 
 	//Constructors
 
@@ -300,6 +302,35 @@ public class Graph extends JPanel implements Serializable{
 	* @param o the orientatin (HORIZONTAL or VERTICAL)
 	*/
 	public void drawAxis(Graphics g, Domain d, double c, int o){
+		int type = d.getType();
+		double t;
+		drawAxisLine(g, d, c, o);
+		if (o == HORIZONTAL){
+			//Draw labels
+			if (type == Domain.DISCRETE) t = d.getLowerValue(); else t = d.getLowerBound();
+			drawLabel(g, format(t), t, c, BELOW);
+			if (type == Domain.DISCRETE) t = d.getUpperValue(); else t = d.getUpperBound();
+			drawLabel(g, format(t), t, c, BELOW);
+		}
+		else{
+			//Draw labels
+			if (type == Domain.DISCRETE) t = d.getLowerValue(); else t = d.getLowerBound();
+			drawLabel(g, format(t), c, t, RIGHT);
+			if (type == Domain.DISCRETE) t = d.getUpperValue(); else t = d.getUpperBound();
+			drawLabel(g, format(t), c, t, RIGHT);
+		}
+	}
+
+	/**
+	* This method draws the line and tick marks of an axis, but not the labels, as
+	* drawAxis does. It is for drawing the axis again over data without the cost of
+	* formatting and measuring the labels.
+	* @param g the graphics context
+	* @param d the domain
+	* @param c the position relative to the other variable
+	* @param o the orientatin (HORIZONTAL or VERTICAL)
+	*/
+	public void drawAxisLine(Graphics g, Domain d, double c, int o){
 		int type = d.getType();
 		double t;
 		if (o == HORIZONTAL){
@@ -311,11 +342,6 @@ public class Graph extends JPanel implements Serializable{
 				drawTick(g, t, c, VERTICAL);
 			}
 			if (type == Domain.CONTINUOUS) drawTick(g, d.getUpperBound(), c, VERTICAL);
-			//Draw labels
-			if (type == Domain.DISCRETE) t = d.getLowerValue(); else t = d.getLowerBound();
-			drawLabel(g, format(t), t, c, BELOW);
-			if (type == Domain.DISCRETE) t = d.getUpperValue(); else t = d.getUpperBound();
-			drawLabel(g, format(t), t, c, BELOW);
 		}
 		else{
 			//Draw thte line
@@ -326,11 +352,6 @@ public class Graph extends JPanel implements Serializable{
 				drawTick(g, c, t, HORIZONTAL);
 			}
 			if (type == Domain.CONTINUOUS) drawTick(g, c, d.getUpperBound(), HORIZONTAL);
-			//Draw labels
-			if (type == Domain.DISCRETE) t = d.getLowerValue(); else t = d.getLowerBound();
-			drawLabel(g, format(t), c, t, RIGHT);
-			if (type == Domain.DISCRETE) t = d.getUpperValue(); else t = d.getUpperBound();
-			drawLabel(g, format(t), c, t, RIGHT);
 		}
 	}
 
@@ -401,6 +422,86 @@ public class Graph extends JPanel implements Serializable{
 		g.fillRect(getXGraph(x) - pointSize / 2, getYGraph(y) - pointSize / 2, pointSize, pointSize);
 	}
 
+	//Methods for drawing whole arrays of coordinates at once
+
+	/**
+	* This method converts the first n coordinates of the arrays to graph units,
+	* in the pixel buffers.
+	* @param x the x-coordinates in scale units
+	* @param y the y-coordinates in scale units
+	* @param n the number of coordinates
+	*/
+	private void toPixels(double[] x, double[] y, int n){
+		if (xPixels.length < n){
+			xPixels = new int[n];
+			yPixels = new int[n];
+		}
+		//The same arithmetic as getXGraph and getYGraph, with the sizes looked up once
+		int w = getSize().width - leftMargin - rightMargin, h = getSize().height - bottomMargin - topMargin;
+		int bottom = getSize().height - bottomMargin;
+		double dx = xMax - xMin, dy = yMax - yMin;
+		for (int i = 0; i < n; i++){
+			xPixels[i] = leftMargin + (int)(((x[i] - xMin) / dx) * w);
+			yPixels[i] = bottom - (int)(((y[i] - yMin) / dy) * h);
+		}
+	}
+
+	/**
+	* This method draws lines through the first n points of the arrays (in scale
+	* units) with a single call to the graphics context.
+	* @param g the graphics context
+	* @param x the x-coordinates of the points
+	* @param y the y-coordinates of the points
+	* @param n the number of points
+	*/
+	public void drawPolyline(Graphics g, double[] x, double[] y, int n){
+		if (n < 2) return;
+		toPixels(x, y, n);
+		g.drawPolyline(xPixels, yPixels, n);
+	}
+
+	/**
+	* This method draws the first n points of the arrays (in scale units). Points
+	* that fall on the same pixel as the one before are only drawn once.
+	* @param g the graphics context
+	* @param x the x-coordinates of the points
+	* @param y the y-coordinates of the points
+	* @param n the number of points
+	*/
+	public void drawPoints(Graphics g, double[] x, double[] y, int n){
+		toPixels(x, y, n);
+		for (int i = 0; i < n; i++){
+			if (i > 0 && xPixels[i] == xPixels[i - 1] && yPixels[i] == yPixels[i - 1]) continue;
+			g.fillRect(xPixels[i] - pointSize / 2, yPixels[i] - pointSize / 2, pointSize, pointSize);
+		}
+	}
+
+	/**
+	* This method fills n adjacent boxes of equal width, from a common base up to
+	* the heights given (all in scale units), as for a histogram. Each edge is
+	* converted to graph units once, and neighboring boxes of the same height in
+	* pixels are filled together.
+	* @param g the graphics context
+	* @param x0 the x-coordinate of the left edge of the first box
+	* @param w the width of each box
+	* @param y the heights of the boxes
+	* @param n the number of boxes
+	* @param base the y-coordinate of the bottom of the boxes
+	*/
+	public void fillBoxes(Graphics g, double x0, double w, double[] y, int n, double base){
+		if (n < 1) return;
+		int yBase = getYGraph(base);
+		int left = getXGraph(x0), top = getYGraph(y[0]);
+		for (int i = 1; i <= n; i++){
+			int t = i < n ? getYGraph(y[i]) : Integer.MIN_VALUE;
+			if (t == top) continue;
+			int right = getXGraph(x0 + i * w);
+			if (top < yBase) g.fillRect(left, top, right - left, yBase - top);
+			left = right;
+			top = t;
+		}
+	}
+
 	/**
 	* This method sets the point size (in pixels) for drawing points.
 	* @param n the point size
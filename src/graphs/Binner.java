@@ -0,0 +1,220 @@
+package graphs;
+
+import java.lang.Math;
+import java.lang.System;
+
+/**
+ * This class sorts values into equal width bins over a range of x.
+ * Values that fall outside of the range are counted in an underflow or
+ * overflow counter instead of being dropped, and NaNs are counted as
+ * overflow.
+ * <p>
+ * In auto-ranging mode the range grows to take in values outside of it:
+ * adjacent bins are merged in pairs, which doubles the bin width and
+ * leaves half of the bins free on the side the value fell.  The number
+ * of bins never changes, and nothing already counted is lost.
+ */
+public class Binner
+{
+    /**
+     * The most times the range will be doubled to take in a single value.
+     */
+    private final static int MAX_DOUBLINGS = 64;
+
+    /**
+     * An array containing a count of how many values are in each bin.
+     */
+    public int[] bins;
+
+    /**
+     * The number of bins to separate the data into.
+     */
+    public int numBins;
+
+    /**
+     * The max and min values of the x axis.
+     */
+    public double xMin, xMax;
+
+    /**
+     * The width of each bin.
+     */
+    public double binWidth;
+
+    /**
+     * The number of values below xMin.
+     */
+    public long underflow;
+
+    /**
+     * The number of values at or above xMax (or NaN).
+     */
+    public long overflow;
+
+    /**
+     * Whether or not to grow the range to take in values outside of it.
+     */
+    public boolean autoRange;
+
+    /**
+     * The reciprocal of the bin width.
+     */
+    private double scale;
+
+    /**
+     * Creates a new set of empty bins with the values given.
+     *
+     * @param xMin the minimum x value
+     * @param xMax the maximum x value
+     * @param numBins the number of bins to separate the data into
+     */
+    public Binner(double xMin, double xMax, int numBins)
+    {
+	setRange(xMin, xMax, numBins);
+    }
+
+    /**
+     * Changes the range and number of bins, emptying all of the bins.
+     *
+     * @param xMin the minimum x value
+     * @param xMax the maximum x value
+     * @param numBins the number of bins to separate the data into
+     */
+    public void setRange(double xMin, double xMax, int numBins)
+    {
+	this.xMin = xMin;
+	this.xMax = xMax;
+	this.numBins = numBins;
+	bins = new int[numBins];
+	binWidth = (xMax - xMin) / numBins;
+	scale = 1.0 / binWidth;
+	underflow = 0;
+	overflow = 0;
+    }
+
+    /**
+     * Makes these bins a copy of others, reusing the array of counts if it
+     * is the right size.
+     *
+     * @param b The bins to copy.
+     */
+    public void copyFrom(Binner b)
+    {
+	if (bins == null || bins.length != b.numBins)
+	    bins = new int[b.numBins];
+	System.arraycopy(b.bins, 0, bins, 0, b.numBins);
+	numBins = b.numBins;
+	xMin = b.xMin;
+	xMax = b.xMax;
+	binWidth = b.binWidth;
+	scale = b.scale;
+	underflow = b.underflow;
+	overflow = b.overflow;
+	autoRange = b.autoRange;
+    }
+
+    /**
+     * Adds a value to the bins.
+     *
+     * @param x The value to add.
+     * @param n The number of times to add it.
+     */
+    public void add(double x, int n)
+    {
+	double offset = (x - xMin) * scale;
+	if (offset >= 0.0 && offset < numBins) {
+	    bins[(int) offset] += n;
+	    return;
+	}
+	if (autoRange && widen(x)) {
+	    int index = (int) ((x - xMin) * scale);
+	    bins[Math.min(index, numBins - 1)] += n;
+	}
+	else if (x < xMin)
+	    underflow += n;
+	else
+	    overflow += n;
+    }
+
+    /**
+     * Empties all of the bins and the underflow and overflow counters.
+     */
+    public void clear()
+    {
+	for (int i = 0; i < numBins; i++)
+	    bins[i] = 0;
+	underflow = 0;
+	overflow = 0;
+    }
+
+    /**
+     * Returns the number of values added, in range or not.
+     *
+     * @return the total count
+     */
+    public long total()
+    {
+	long t = underflow + overflow;
+	for (int i = 0; i < numBins; i++)
+	    t += bins[i];
+	return t;
+    }
+
+    /**
+     * Returns the largest count of any one bin.
+     *
+     * @return the largest bin count
+     */
+    public int max()
+    {
+	int m = 0;
+	for (int i = 0; i < numBins; i++)
+	    if (bins[i] > m)
+		m = bins[i];
+	return m;
+    }
+
+    /**
+     * Doubles the range until it includes x, if that can be done.
+     *
+     * @param x The value the range should include.
+     * @return Whether or not x is now in range.
+     */
+    private boolean widen(double x)
+    {
+	if (Double.isNaN(x) || Double.isInfinite(x))
+	    return false;
+	for (int i = 0; i < MAX_DOUBLINGS; i++) {
+	    if (x < xMin)
+		doubleRange(true);
+	    else if (x >= xMax)
+		doubleRange(false);
+	    else
+		return true;
+	}
+	return false;
+    }
+
+    /**
+     * Merges the bins in pairs, doubling the range toward one side.
+     * Every old bin lies entirely in one of the new bins, so this works
+     * for an odd number of bins as well.
+     *
+     * @param low Whether to grow toward lower x (else toward higher x).
+     */
+    private void doubleRange(boolean low)
+    {
+	int[] old = bins.clone();
+	int offset = low ? numBins : 0;
+	for (int i = 0; i < numBins; i++)
+	    bins[i] = 0;
+	for (int j = 0; j < numBins; j++)
+	    bins[(offset + j) / 2] += old[j];
+	if (low)
+	    xMin -= xMax - xMin;
+	else
+	    xMax += xMax - xMin;
+	binWidth *= 2.0;
+	scale = 1.0 / binWidth;
+    }
+}
@@ -3,6 +3,9 @@ package graphs;
 import java.lang.System;
 
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import javax.swing.*;
 
 import java.util.Vector;
@@ -15,6 +18,19 @@ import java.text.DecimalFormat;
  * This class extends the Graph class published by the University
  * of Alabama in Huntsville to graph scatterplot data.  All of the members
  * are public, so be careful how you manipulate them.
+ * <p>
+ * However many points there are, at most two are drawn per pixel column:
+ * the smallest and the largest y value that fall in it, in the order
+ * they come.  This keeps the shape of the data (every spike still shows)
+ * while the drawing costs depend on the width of the graph instead of
+ * the length of the run.  The two points of each column are found with
+ * the min/max pyramid of the data, without going through the points.
+ * <p>
+ * The time axis can be zoomed with the mouse wheel and panned by
+ * dragging; a double click goes back to following all of the data.
+ * Zoomed out past the recent points, the archived history of the data is
+ * drawn from its buckets, which are as fine as what is kept of that part
+ * of the run.
  *
  * @author Ian Terrell
  */
@@ -62,6 +78,68 @@ public class DataGraph extends Graph
     
     public int mode = LINES;
 
+    /**
+     * Whether or not the x axis is set by the user instead of following
+     * the data.
+     */
+    public boolean zoomed;
+
+    /**
+     * The x range shown when zoomed.
+     */
+    public double viewXMin, viewXMax;
+
+    /**
+     * The factor the x range is scaled by per notch of the mouse wheel.
+     */
+    private final static double ZOOM_STEP = 1.25;
+
+    /**
+     * The axes and functions, drawn offscreen.
+     */
+    private Layers layers = new Layers();
+
+    /**
+     * The archived buckets of the data, reused between paints.
+     */
+    private double[] bucketX, bucketLo, bucketHi;
+
+    /**
+     * The indices of the smallest and largest points of a column, as
+     * found by GraphData.extremes().
+     */
+    private int[] extremes = new int[2];
+
+    /**
+     * The points left after downsampling, reused between paints.
+     */
+    private double[] lodX = new double[0], lodY = new double[0];
+
+    /**
+     * The number of points left after downsampling.
+     */
+    private int lodSize;
+
+    /**
+     * The smallest and largest y values of the points left.
+     */
+    private double lodYMin, lodYMax;
+
+    /**
+     * The pixel column being downsampled, and the number of points in it.
+     */
+    private int column, columnCount;
+
+    /**
+     * The points of the column with the smallest and largest y values.
+     */
+    private double minX, minY, maxX, maxY;
+
+    /**
+     * Whether the smallest y value of the column came before the largest.
+     */
+    private boolean minFirst;
+
     /**
      * Creates a new graph.
      *
@@ -74,10 +152,14 @@ public class DataGraph extends Graph
 	this.width = width;
 	this.height = height;
 	setPreferredSize(new Dimension(width,height));
-	setToolTipText("Data Graph");
+	setToolTipText("Data Graph (wheel to zoom, drag to pan, double click to reset)");
 	theData = new GraphData();
 	color = Color.red;
 	functionList = new Vector();
+	ViewMonitor v = new ViewMonitor();
+	addMouseListener(v);
+	addMouseMotionListener(v);
+	addMouseWheelListener(v);
     }
      
     /**
@@ -87,60 +169,343 @@ public class DataGraph extends Graph
      */ 
     public void paintComponent(Graphics g)
     {
-	xMin = theData.xMin;
-	xMax = theData.xMax;
-	yMin = theData.yMin;
-	yMax = theData.yMax;
-	
-	// Clear drawing area:
-	g.clearRect(0,0,width,height);
+	GraphPaintEvent event = new GraphPaintEvent();
+	event.begin();
+	// Following the data, the axes are rounded out to nice values so
+	// they (and with them the cached layers) only change once in a while:
+	if (zoomed) {
+	    xMin = viewXMin;
+	    xMax = viewXMax;
+	}
+	else {
+	    double step = Layers.niceStep(theData.xMax - theData.xMin,
+					  theData.numXTics);
+	    xMin = Math.floor(theData.xMin / step) * step;
+	    xMax = Math.ceil(theData.xMax / step) * step;
+	    if (xMax <= xMin)
+		xMax = xMin + step;
+	}
+	setScale(xMin,xMax,0.0,1.0);
+	downsample();
+	if (zoomed && lodSize > 0) {
+	    yMin = lodYMin;
+	    yMax = lodYMax;
+	}
+	else {
+	    yMin = theData.yMin;
+	    yMax = theData.yMax;
+	}
+	double step = Layers.niceStep(yMax - yMin, theData.numYTics);
+	yMin = Math.floor(yMin / step) * step;
+	yMax = Math.ceil(yMax / step) * step;
+	if (yMax <= yMin)
+	    yMax = yMin + step;
 	setScale(xMin,xMax,yMin,yMax);
 
-		
-	// Draw functions:
-	Iterator i = functionList.iterator();
-	while (i.hasNext()) {
-	    Function F = (Function) i.next();
-	    F.draw(g,this);
+	double xAxisLoc;
+	if (yMin <= 0 && yMax > 0) {
+	    setMargins(20,20,20,20);
+	    xAxisLoc = 0;
+	}
+	else {
+	    setMargins(20,20,30,10);
+	    double yPerPixel = (yMax-yMin)/ ((double) (getYGraph(yMin) - getYGraph(yMax)));
+	    xAxisLoc = yMin-yPerPixel*11;
 	}
 
+	// Draw functions and axes offscreen, under the data:
+	long stamp = Layers.stamp(functionList);
+	if (!layers.isValid(this, stamp)) {
+	    Graphics2D u = layers.startUnder(this);
+	    Iterator i = functionList.iterator();
+	    while (i.hasNext()) {
+		Function F = (Function) i.next();
+		F.draw(u,this);
+	    }
+	    u.setColor(Color.black);
+	    drawAxis(u,xMin,xMax,(xMax-xMin)/theData.numXTics,
+		     Domain.CONTINUOUS,xAxisLoc,Graph.HORIZONTAL);
+	    drawAxis(u,yMin,yMax,(yMax-yMin)/theData.numYTics,
+		     Domain.CONTINUOUS,xMin,Graph.VERTICAL);
+	    u.dispose();
+	    layers.validate(this, stamp);
+	}
+	g.drawImage(layers.under,0,0,null);
+
 	// Draw data:
 	g.setColor(color);
-	i = theData.points.iterator();
-	double pX = 0.0;
-	double pY = 0.0;
-	boolean firstPoint = true;
-	while (i.hasNext()) {
-	    Coordinate c = (Coordinate) i.next();
-	    
-	    if (mode == LINES) {
-		if (!firstPoint) 
-		    drawLine(g,pX,pY,c.x,c.y);
+	if (mode == LINES)
+	    drawPolyline(g,lodX,lodY,lodSize);
+	else if (mode == POINTS)
+	    drawPoints(g,lodX,lodY,lodSize);
+
+	if (event.shouldCommit()) {
+	    event.graph = "Data";
+	    event.width = getWidth();
+	    event.height = getHeight();
+	    event.points = lodSize;
+	    event.commit();
+	}
+    }
+
+    /**
+     * Reduces the data between xMin and xMax to at most two points per
+     * pixel column, taking the archived buckets first if they are shown
+     * and then the points held.  The points held are gone through a
+     * column at a time, so this takes time in proportion to the width
+     * (times the log of the number of points), not to the number of
+     * points.  The x scale must already be set.
+     */
+    private void downsample()
+    {
+	int n = 2 * Math.max(getSize().width, width) + 2;
+	if (lodX.length < n) {
+	    lodX = new double[n];
+	    lodY = new double[n];
+	}
+	lodSize = 0;
+	lodYMin = Double.POSITIVE_INFINITY;
+	lodYMax = Double.NEGATIVE_INFINITY;
+	columnCount = 0;
+
+	if (theData.showsArchive()) {
+	    SeriesArchive a = theData.archive;
+	    int b = a.numBuckets();
+	    if (bucketX == null || bucketX.length < b) {
+		bucketX = new double[b];
+		bucketLo = new double[b];
+		bucketHi = new double[b];
+	    }
+	    b = a.getBuckets(bucketX, bucketLo, bucketHi, null);
+	    for (int k = 0; k < b; k++)
+		if (bucketX[k] >= xMin && bucketX[k] <= xMax) {
+		    sample(bucketX[k], bucketLo[k]);
+		    sample(bucketX[k], bucketHi[k]);
+		}
+	}
+
+	// The x's are increasing, so the visible points, and then the
+	// points of each column, can be found by bisection:
+	double[] x = theData.x;
+	double[] y = theData.y;
+	int k = firstAfter(0, theData.size, xMin, false);
+	int end = firstAfter(k, theData.size, xMax, true);
+	while (k < end) {
+	    int c = getXGraph(xAt(k));
+	    int lo = k + 1;
+	    int hi = end;
+	    while (lo < hi) {
+		int mid = (lo + hi) >>> 1;
+		if (getXGraph(xAt(mid)) <= c)
+		    lo = mid + 1;
 		else
-		    firstPoint = false;
-		pX = c.x;
-		pY = c.y;
+		    hi = mid;
+	    }
+	    theData.extremes(k, lo, extremes);
+	    int i = extremes[0];
+	    int j = extremes[1];
+	    if (i == j)
+		sample(x[i], y[i]);
+	    else if (x[i] <= x[j]) {
+		sample(x[i], y[i]);
+		sample(x[j], y[j]);
 	    }
-	    else if (mode == POINTS) {
-		drawPoint(g,c.x,c.y);
+	    else {
+		sample(x[j], y[j]);
+		sample(x[i], y[i]);
 	    }
+	    k = lo;
 	}
+	flushColumn();
+    }
 
-	g.setColor(Color.black);
-	double xAxisLoc;
-	if (yMin <= 0 && yMax > 0) {
-	    setMargins(20,20,20,20);
-	    xAxisLoc = 0;
+    /**
+     * Returns the x value of a point held.
+     *
+     * @param k the age of the point, 0 being the oldest
+     * @return the x value of the point
+     */
+    private double xAt(int k)
+    {
+	return theData.x[(theData.start + k) % theData.x.length];
+    }
+
+    /**
+     * Finds the first point held at or past a value of x, by bisection.
+     *
+     * @param lo the age of the first point to look at
+     * @param hi the age of the point after the last to look at
+     * @param v the value of x
+     * @param past whether to find the first point past v, instead of at
+     *             or past it
+     * @return the age of the point found, or hi if there is none
+     */
+    private int firstAfter(int lo, int hi, double v, boolean past)
+    {
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    double m = xAt(mid);
+	    if (m < v || (past && m == v))
+		lo = mid + 1;
+	    else
+		hi = mid;
+	}
+	return lo;
+    }
+
+    /**
+     * Adds a point to the pixel column it falls in, first finishing the
+     * column before it if this is a new one.
+     *
+     * @param x the x value of the point
+     * @param y the y value of the point
+     */
+    private void sample(double x, double y)
+    {
+	int c = getXGraph(x);
+	if (columnCount > 0 && c != column)
+	    flushColumn();
+	if (columnCount++ == 0) {
+	    column = c;
+	    minX = maxX = x;
+	    minY = maxY = y;
+	    minFirst = true;
+	}
+	else if (y < minY) {
+	    minX = x;
+	    minY = y;
+	    minFirst = false;
+	}
+	else if (y > maxY) {
+	    maxX = x;
+	    maxY = y;
+	    minFirst = true;
+	}
+    }
+
+    /**
+     * Puts the smallest and largest points of the current column in the
+     * downsampled points, in the order they came.
+     */
+    private void flushColumn()
+    {
+	if (columnCount == 0)
+	    return;
+	if (columnCount == 1 || (minX == maxX && minY == maxY))
+	    keep(minX, minY);
+	else if (minFirst) {
+	    keep(minX, minY);
+	    keep(maxX, maxY);
 	}
 	else {
-	    setMargins(20,20,30,10);
-	    double yPerPixel = (yMax-yMin)/ ((double) (getYGraph(yMin) - getYGraph(yMax)));
-	    xAxisLoc = yMin-yPerPixel*11;
+	    keep(maxX, maxY);
+	    keep(minX, minY);
 	}
-	drawAxis(g,xMin,xMax,(xMax-xMin)/theData.numXTics,
-		 Domain.CONTINUOUS,xAxisLoc,Graph.HORIZONTAL);
-	drawAxis(g,yMin,yMax,(yMax-yMin)/theData.numYTics,
-		 Domain.CONTINUOUS,xMin,Graph.VERTICAL);
+	columnCount = 0;
     }
-}
 
+    /**
+     * Adds a point to the downsampled points.
+     *
+     * @param x the x value of the point
+     * @param y the y value of the point
+     */
+    private void keep(double x, double y)
+    {
+	if (lodSize == lodX.length) {
+	    double[] nx = new double[2 * lodSize];
+	    double[] ny = new double[2 * lodSize];
+	    System.arraycopy(lodX, 0, nx, 0, lodSize);
+	    System.arraycopy(lodY, 0, ny, 0, lodSize);
+	    lodX = nx;
+	    lodY = ny;
+	}
+	lodX[lodSize] = x;
+	lodY[lodSize++] = y;
+	if (y < lodYMin)
+	    lodYMin = y;
+	if (y > lodYMax)
+	    lodYMax = y;
+    }
+
+    /**
+     * Zooms the x axis by a factor about a point, going back to following
+     * the data if that shows all of it.
+     *
+     * @param center the x value to zoom about
+     * @param factor the factor to scale the x range by
+     */
+    public void zoom(double center, double factor)
+    {
+	double x0 = center - (center - xMin) * factor;
+	double x1 = center + (xMax - center) * factor;
+	if (x0 <= theData.xMin && x1 >= theData.xMax)
+	    zoomed = false;
+	else if (x1 > x0) {
+	    viewXMin = x0;
+	    viewXMax = x1;
+	    zoomed = true;
+	}
+	repaint();
+    }
+
+    /**
+     * Moves the x axis by the given amount, keeping its width.
+     *
+     * @param dx the amount to add to the x range
+     */
+    public void pan(double dx)
+    {
+	viewXMin = xMin + dx;
+	viewXMax = xMax + dx;
+	zoomed = true;
+	repaint();
+    }
+
+    /**
+     * This class zooms and pans the graph with the mouse.
+     */
+    private class ViewMonitor extends MouseAdapter
+    {
+	/**
+	 * The pixel the mouse was last dragged from.
+	 */
+	private int lastX;
+
+	/**
+	 * Zooms in or out about the pointer.
+	 *
+	 * @param e the mouse wheel event
+	 */
+	public void mouseWheelMoved(MouseWheelEvent e)
+	{
+	    zoom(getXScale(e.getX()), Math.pow(ZOOM_STEP, e.getWheelRotation()));
+	}
+
+	/**
+	 * Starts a drag, or goes back to following the data on a double
+	 * click.
+	 *
+	 * @param e the mouse event
+	 */
+	public void mousePressed(MouseEvent e)
+	{
+	    lastX = e.getX();
+	    if (e.getClickCount() == 2) {
+		zoomed = false;
+		repaint();
+	    }
+	}
+
+	/**
+	 * Pans the graph along with the pointer.
+	 *
+	 * @param e the mouse event
+	 */
+	public void mouseDragged(MouseEvent e)
+	{
+	    pan(getXScale(lastX) - getXScale(e.getX()));
+	    lastX = e.getX();
+	}
+    }
+}
@@ -9,6 +9,11 @@ import java.awt.Graphics;
  * This class implements the ability to graph a function on an existing
  * graph.  It is meant to be used as a superclass, with the f(x) function
  * overwritten.
+ * <p>
+ * The function is sampled once per pixel, and the samples are kept until
+ * the x range or the width of the graph changes, so repainting a graph
+ * does not evaluate f(x) again.  A subclass whose f(x) changes must call
+ * invalidate().
  *
  * @author Ian Terrell
  */
@@ -18,6 +23,22 @@ public class Function
      * The color to graph the function.
      */
     public Color color;
+
+    /**
+     * The points the function was sampled at, kept between draws.
+     */
+    private double[] xs = new double[0], ys = new double[0];
+
+    /**
+     * The number of points sampled, or -1 if they must be sampled again.
+     */
+    private int numSamples = -1;
+
+    /**
+     * The x range and width in pixels the points were sampled for.
+     */
+    private double sampledXMin, sampledXMax;
+    private int sampledPixels;
     
     /**
      * Creates a function to be graphed in blue.
@@ -49,7 +70,17 @@ public class Function
     }
 
     /**
-     * This function draws the function on the given graph.
+     * Throws away the sampled points, so that they are sampled again the
+     * next time the function is drawn.
+     */
+    public void invalidate()
+    {
+	numSamples = -1;
+    }
+
+    /**
+     * This function draws the function on the given graph, sampled once
+     * per pixel and drawn as a single polyline.
      *
      * @param g The graphics element being graphed.
      * @graph The Graph on which to draw the function.
@@ -59,16 +90,26 @@ public class Function
 	double xMax = graph.getXMax();
 	double xMin = graph.getXMin();
 	g.setColor(color);
-	double dx = (xMax - xMin) / 
-	    (graph.getXGraph(xMax) - graph.getXGraph(xMin));
-	double pX = xMin;
-	double pY = f(pX);
-	double x, y;
-	x = pX + dx; y = f(x);
-	while (x <= xMax) {
-	    graph.drawLine(g,pX,pY,x,y);
-	    pX = x; pY = y;
-	    x = pX + dx; y = f(x);
+	int pixels = graph.getXGraph(xMax) - graph.getXGraph(xMin);
+	if (pixels <= 0)
+	    return;
+	if (numSamples < 0 || xMin != sampledXMin || xMax != sampledXMax 
+	    || pixels != sampledPixels) {
+	    double dx = (xMax - xMin) / pixels;
+	    if (xs.length < pixels + 1) {
+		xs = new double[pixels + 1];
+		ys = new double[pixels + 1];
+	    }
+	    int n = 0;
+	    for (double x = xMin; x <= xMax && n <= pixels; x += dx) {
+		xs[n] = x;
+		ys[n++] = f(x);
+	    }
+	    numSamples = n;
+	    sampledXMin = xMin;
+	    sampledXMax = xMax;
+	    sampledPixels = pixels;
 	}
+	graph.drawPolyline(g,xs,ys,numSamples);
     }
 }
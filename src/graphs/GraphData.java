@@ -1,14 +1,45 @@
 package graphs;
 
-import java.util.Vector;
+import java.lang.Math;
+import java.lang.System;
 
 /**
- * A set of data for use with a DataGraph.
+ * A set of data for use with a DataGraph.  The points are kept in
+ * parallel arrays of x and y values used as ring buffers, so adding a
+ * point and dropping the oldest one are both done in constant time and
+ * nothing is allocated per point.
+ * <p>
+ * The y range follows the points currently held: the smallest and
+ * largest y values are tracked with monotonic deques (queues of the
+ * points that could still become the min or max once the older points
+ * are dropped), which keeps them exact in constant amortized time.
+ * <p>
+ * The points are also summed up in a min/max pyramid: for every aligned
+ * block of 2, 4, 8, ... points it keeps which points have the smallest
+ * and largest y value.  extremes() uses it to find those of any run of
+ * points in logarithmic time, so a graph can be downsampled at a cost
+ * that depends on its width and not on the number of points.
+ * <p>
+ * Points dropped from the ring buffers are not lost but put in a
+ * SeriesArchive, so with no maximum number of points only the most
+ * recent points are kept as they are and the rest of the history is
+ * kept in coarser and coarser buckets, in bounded memory.
  *
  * @author Ian Terrell
  */
 public class GraphData
 {
+    /**
+     * The number of points room is made for when there is no maximum.
+     */
+    private final static int INITIAL_CAPACITY = 256;
+
+    /**
+     * The default number of points kept as they are when there is no
+     * maximum number of points.
+     */
+    public final static int DEFAULT_RECENT_POINTS = 4096;
+
     /**
      * The max and min values of the x and y values of the points.
      */
@@ -20,15 +51,73 @@ public class GraphData
     public int numXTics, numYTics;
 
     /**
-     * The maximum number of points to graph.
+     * The maximum number of points to graph, or -1 for no maximum.
+     * Use setMaxPoints() to change it.
      */
     public int maxPoints;
-        
+
+    /**
+     * The number of points kept as they are when there is no maximum
+     * number of points; older ones are only kept in the archive.
+     */
+    public int recentPoints = DEFAULT_RECENT_POINTS;
+
+    /**
+     * The points dropped from the ring buffers.
+     */
+    public SeriesArchive archive = new SeriesArchive();
+
+    /**
+     * The x and y values of the points.  The oldest point is at index
+     * start, and the rest follow it, wrapping around the end of the
+     * arrays.
+     */
+    public double[] x, y;
+
+    /**
+     * The index of the oldest point.
+     */
+    public int start;
+
+    /**
+     * The number of points in the data set.
+     */
+    public int size;
+
+    /**
+     * The y range to use before there are any points.
+     */
+    private double anticipatedYMin, anticipatedYMax;
+
+    /**
+     * The number of points ever added, which numbers the points.
+     */
+    private long count;
+
+    /**
+     * The numbers of the points that may become the smallest and the
+     * largest y value, oldest first, as ring buffers.
+     */
+    private long[] minDeque, maxDeque;
+
+    /**
+     * The index of the front of each deque.
+     */
+    private int minHead, maxHead;
+
     /**
-     * The coordinates in the data set.
+     * The number of points in each deque.
      */
-    public Vector points;
-    
+    private int minSize, maxSize;
+
+    /**
+     * The min/max pyramid: level k holds, for each block of 2^(k+1)
+     * points numbered from a multiple of 2^(k+1), the indices in the
+     * arrays of its points with the smallest and the largest y value.
+     * Each level is a ring buffer by block number.
+     */
+    private int[][] pyramidMin, pyramidMax;
+
     /**
      * Creates a new data set with the given parameters.
      *
@@ -47,12 +136,14 @@ public class GraphData
 	xMax = x1;
 	yMin = y0;
 	yMax = y1;
+	anticipatedYMin = y0;
+	anticipatedYMax = y1;
 	numXTics = xTics;
 	numYTics = yTics;
-	points = new Vector();
 	maxPoints = mp;
+	allocate(mp > 0 ? mp : INITIAL_CAPACITY);
     }
-	    
+
     /**
      * Creates a new data set with the given parameters and 10 tics/axis.
      *
@@ -66,7 +157,7 @@ public class GraphData
     {
 	this(x0,x1,y0,y1,10,10,mp);
     }
-    
+
     /**
      * Creates a new data set with default values.
      */
@@ -74,34 +165,299 @@ public class GraphData
     {
 	this(0.0,1.0,0.0,1.0,-1);
     }
-	
+
     /**
-     * Adds a coordinate to the data set.  It adjusts the min and max
-     * values if the point added is lower or higher than the existing
-     * minimums or maximums.
-     * <p>
-     * If using a maximum number of points, it assumes that the x's 
-     * coming in are monotonically increasing.
+     * Adds a coordinate to the data set.
      *
      * @param c The coordinate to add.
      */
     public void addCoordinate(Coordinate c)
     {
-	points.add(c);
-	if (c.x < xMin)
-	    xMin = c.x;
-	else if (c.x > xMax)
-	    xMax = c.x;
-	if (c.y < yMin)
-	    yMin = c.y;
-	else if (c.y > yMax)
-	    yMax = c.y;
-	
-	if (maxPoints > 0)
-	    while (points.size() > maxPoints) {
-		points.remove(0);
-		xMin = ((Coordinate) points.get(0)).x;
+	add(c.x, c.y);
+    }
+
+    /**
+     * Adds a point to the data set, moving the oldest point to the
+     * archive if that makes more than the maximum (or with no maximum,
+     * the recent) number of points.  It assumes that the x's coming in
+     * are monotonically increasing.
+     *
+     * @param px The x value of the point.
+     * @param py The y value of the point.
+     */
+    public void add(double px, double py)
+    {
+	int limit = maxPoints > 0 ? maxPoints : recentPoints;
+	while (size >= limit)
+	    removeOldest();
+	if (size == x.length)
+	    reallocate(2 * x.length);
+	int i = index(size);
+	x[i] = px;
+	y[i] = py;
+	size++;
+	long n = count++;
+	climb(n);
+
+	// Points that can never be the min or max again are dropped from
+	// the back of the deques before the new one goes on:
+	while (minSize > 0 && py <= y[position(minDeque[back(minHead, minSize)])])
+	    minSize--;
+	minDeque[(minHead + minSize++) % minDeque.length] = n;
+	while (maxSize > 0 && py >= y[position(maxDeque[back(maxHead, maxSize)])])
+	    maxSize--;
+	maxDeque[(maxHead + maxSize++) % maxDeque.length] = n;
+	updateRange();
+    }
+
+    /**
+     * Changes the maximum number of points, moving the oldest points to
+     * the archive if there are now too many.
+     *
+     * @param mp The maximum number of points to graph, or -1 for no
+     *           maximum.
+     */
+    public void setMaxPoints(int mp)
+    {
+	maxPoints = mp;
+	if (mp > 0) {
+	    while (size > mp)
+		removeOldest();
+	    reallocate(mp);
+	}
+	else
+	    while (size > recentPoints)
+		removeOldest();
+	updateRange();
+    }
+
+    /**
+     * Returns whether or not the whole history is graphed, which is when
+     * there is no maximum number of points.
+     *
+     * @return whether or not the archive is graphed
+     */
+    public boolean showsArchive()
+    {
+	return maxPoints <= 0 && archive.count > 0;
+    }
+
+    /**
+     * Moves the oldest point to the archive, and drops it from the front
+     * of the deques if it is there.
+     */
+    private void removeOldest()
+    {
+	archive.add(x[start], y[start]);
+	long oldest = count - size;
+	if (minSize > 0 && minDeque[minHead] == oldest) {
+	    minHead = (minHead + 1) % minDeque.length;
+	    minSize--;
+	}
+	if (maxSize > 0 && maxDeque[maxHead] == oldest) {
+	    maxHead = (maxHead + 1) % maxDeque.length;
+	    maxSize--;
+	}
+	start = (start + 1) % x.length;
+	size--;
+    }
+
+    /**
+     * Sets the x and y ranges from the points graphed.  A range with no
+     * width is widened by one on either side.
+     */
+    private void updateRange()
+    {
+	if (size == 0) {
+	    yMin = anticipatedYMin;
+	    yMax = anticipatedYMax;
+	    return;
+	}
+	xMin = x[start];
+	xMax = x[index(size - 1)];
+	yMin = y[position(minDeque[minHead])];
+	yMax = y[position(maxDeque[maxHead])];
+	if (showsArchive()) {
+	    xMin = archive.xMin;
+	    yMin = Math.min(yMin, archive.yMin);
+	    yMax = Math.max(yMax, archive.yMax);
+	}
+	if (xMax <= xMin)
+	    xMax = xMin + 1.0;
+	if (yMax <= yMin) {
+	    yMin -= 1.0;
+	    yMax += 1.0;
+	}
+    }
+
+    /**
+     * Finds the points with the smallest and largest y values of a run of
+     * points, the first of each if there are ties, from the pyramid.
+     *
+     * @param i0 The age of the first point of the run, 0 being the oldest.
+     * @param i1 The age of the point after the last of the run, which
+     *           must be after i0.
+     * @param result Where to put the indices in the arrays of the point
+     *               with the smallest y value and of the one with the
+     *               largest.
+     */
+    public void extremes(int i0, int i1, int[] result)
+    {
+	long n = count - size + i0;
+	long end = count - size + i1;
+	int lo = -1;
+	int hi = -1;
+	while (n < end) {
+	    // Take the biggest block that starts here and fits in the run:
+	    int k = 0;
+	    while (k < pyramidMin.length && (n & ((2L << k) - 1)) == 0
+		   && n + (2L << k) <= end)
+		k++;
+	    int a, b;
+	    if (k == 0)
+		a = b = position(n);
+	    else {
+		int[] level = pyramidMin[k - 1];
+		a = level[(int) ((n >> k) % level.length)];
+		b = pyramidMax[k - 1][(int) ((n >> k) % level.length)];
 	    }
+	    if (lo < 0 || y[a] < y[lo])
+		lo = a;
+	    if (hi < 0 || y[b] > y[hi])
+		hi = b;
+	    n += 1L << k;
+	}
+	result[0] = lo;
+	result[1] = hi;
+    }
+
+    /**
+     * Fills in the blocks of the pyramid that the point with the given
+     * number completes, as long as all of their points are held.
+     *
+     * @param n The number of the point.
+     */
+    private void climb(long n)
+    {
+	long first = count - size;
+	for (int k = 1; k <= pyramidMin.length; k++) {
+	    long span = 1L << k;
+	    long b0 = n + 1 - span;
+	    if ((b0 & (span - 1)) != 0 || b0 < first)
+		return;
+	    int lo0, hi0, lo1, hi1;
+	    if (k == 1) {
+		lo0 = hi0 = position(n - 1);
+		lo1 = hi1 = position(n);
+	    }
+	    else {
+		int[] mins = pyramidMin[k - 2];
+		int[] maxes = pyramidMax[k - 2];
+		int c0 = (int) ((b0 >> (k - 1)) % mins.length);
+		int c1 = (int) (((b0 >> (k - 1)) + 1) % mins.length);
+		lo0 = mins[c0];
+		hi0 = maxes[c0];
+		lo1 = mins[c1];
+		hi1 = maxes[c1];
+	    }
+	    int[] mins = pyramidMin[k - 1];
+	    int c = (int) ((b0 >> k) % mins.length);
+	    mins[c] = y[lo1] < y[lo0] ? lo1 : lo0;
+	    pyramidMax[k - 1][c] = y[hi1] > y[hi0] ? hi1 : hi0;
+	}
+    }
+
+    /**
+     * Returns the index in the arrays of the i'th oldest point.
+     *
+     * @param i The age of the point, 0 being the oldest.
+     * @return the index of the point
+     */
+    private int index(int i)
+    {
+	i += start;
+	return i < x.length ? i : i - x.length;
     }
-}
 
+    /**
+     * Returns the index in the arrays of the point with the given number.
+     *
+     * @param n The number of the point.
+     * @return the index of the point
+     */
+    private int position(long n)
+    {
+	return index((int) (n - (count - size)));
+    }
+
+    /**
+     * Returns the index of the back of a deque (both deques are the
+     * same length).
+     *
+     * @param head The index of the front of the deque.
+     * @param n The number of points in the deque.
+     * @return the index of the back of the deque
+     */
+    private int back(int head, int n)
+    {
+	return (head + n - 1) % minDeque.length;
+    }
+
+    /**
+     * Makes empty arrays of the given capacity.
+     *
+     * @param capacity The number of points to make room for.
+     */
+    private void allocate(int capacity)
+    {
+	x = new double[capacity];
+	y = new double[capacity];
+	minDeque = new long[capacity];
+	maxDeque = new long[capacity];
+	// Enough levels for the biggest block that fits, and enough blocks
+	// in each for all of the points held plus a partial block at
+	// either end:
+	int levels = 0;
+	while ((2L << levels) <= capacity)
+	    levels++;
+	pyramidMin = new int[levels][];
+	pyramidMax = new int[levels][];
+	for (int k = 0; k < levels; k++) {
+	    pyramidMin[k] = new int[(capacity >> (k + 1)) + 2];
+	    pyramidMax[k] = new int[(capacity >> (k + 1)) + 2];
+	}
+    }
+
+    /**
+     * Moves the points and deques into arrays of a new capacity, which
+     * must be at least the number of points held, and builds the pyramid
+     * over again.
+     *
+     * @param capacity The number of points to make room for.
+     */
+    private void reallocate(int capacity)
+    {
+	if (capacity == x.length)
+	    return;
+	double[] oldX = x;
+	double[] oldY = y;
+	long[] oldMin = minDeque;
+	long[] oldMax = maxDeque;
+	int oldStart = start;
+	allocate(capacity);
+	for (int i = 0; i < size; i++) {
+	    int j = (oldStart + i) % oldX.length;
+	    x[i] = oldX[j];
+	    y[i] = oldY[j];
+	}
+	start = 0;
+	for (int i = 0; i < minSize; i++)
+	    minDeque[i] = oldMin[(minHead + i) % oldMin.length];
+	for (int i = 0; i < maxSize; i++)
+	    maxDeque[i] = oldMax[(maxHead + i) % oldMax.length];
+	minHead = 0;
+	maxHead = 0;
+	for (long n = count - size; n < count; n++)
+	    climb(n);
+    }
+}
@@ -0,0 +1,42 @@
+package graphs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for painting one graph.  Disabled unless
+ * a recording turns it on.
+ */
+@Name("dmc.GraphPaint")
+@Label("Graph Paint")
+@Description("Painting a graph of a DMC simulation")
+@Category("Diffusion Monte Carlo")
+@Enabled(false)
+@StackTrace(false)
+public class GraphPaintEvent extends Event
+{
+    /**
+     * The kind of graph.
+     */
+    @Label("Graph")
+    public String graph;
+
+    /**
+     * The size of the graph in pixels.
+     */
+    @Label("Width")
+    public int width;
+    @Label("Height")
+    public int height;
+
+    /**
+     * The number of points or bins drawn.
+     */
+    @Label("Points")
+    public int points;
+}
@@ -1,7 +1,5 @@
 package graphs;
 
-import dmc.Walker;
-
 import java.lang.System;
 
 import java.awt.*;
@@ -42,19 +40,9 @@ public class Histogram extends Graph
     public int height;
     
     /**
-     * The vector of walkers to act as data.
-     */
-    public Vector theData;
-
-    /**
-     * The number of bins of the histogram.
+     * The binned walkers to act as data.
      */
-    public int numBins;
-    
-    /**
-     * The max and min values of the x axis.
-     */
-    public double xMin, xMax;
+    public HistogramData theData;
     
     /**
      * The list of functions to graph.
@@ -77,26 +65,36 @@ public class Histogram extends Graph
     public int mode = BOXES;
 
     /**
-     * Constructs a histogram with the given parameters.
+     * The heights and centers of the bins, reused between repaints.
+     */
+    private double[] heights = new double[0], centers = new double[0];
+
+    /**
+     * The axes and functions, drawn offscreen.
+     */
+    private Layers layers = new Layers();
+
+    /**
+     * The axes drawn offscreen.
+     */
+    private Domain xDomain, yDomain;
+
+    /**
+     * Constructs a histogram with the given parameters.  The number of
+     * bins and the range of the x axis are those of the data.
      *
      * @param width the width of the histogram
      * @param height the height of the histogram
-     * @param xMin the min x value to graph
-     * @param xMax The max x value to graph
-     * @param numBins The number of bins of the histogram
+     * @param data The binned walkers to graph
      */
-    public Histogram(int width, int height, double xMin, 
-		     double xMax, int numBins)
+    public Histogram(int width, int height, HistogramData data)
     {
 	super();
 	this.width = width;
 	this.height = height;
-	this.xMin = xMin;
-	this.xMax = xMax;
-	this.numBins = numBins;
+	theData = data;
 	setPreferredSize(new Dimension(width,height));
 	setToolTipText("Histogram");
-	theData = new Vector();
 	functionList = new Vector();
     }
     
@@ -107,70 +105,119 @@ public class Histogram extends Graph
      */ 
     public void paintComponent(Graphics g)
     {
-	// Fill bin data:
-	double totalArea = 0.0;
-	double binWidth = (xMax - xMin) / numBins;
-	int bins[] = new int[numBins];
-	for (int j = 0; j < numBins; j++) 
-	    bins[j] = 0;
-	int binMax = 0;
-	Iterator i = theData.iterator();
-	while (i.hasNext()) {
-	    totalArea += binWidth;
-	    int c = 0;
-	    double val = ((Walker) i.next()).x;
-	    while (val >= xMin) {
-		c++;
-		val -= binWidth;
-	    }
-	    try {
-		bins[c-1]++;
-		if (bins[c-1] > binMax)
-		    binMax = bins[c-1];
-	    } catch (ArrayIndexOutOfBoundsException aioobe) { }
-	}
+	GraphPaintEvent event = new GraphPaintEvent();
+	event.begin();
+	// Bin data, filled in by the simulation:
+	int numBins = theData.numBins;
+	double xMin = theData.xMin;
+	double xMax = theData.xMax;
+	int bins[] = theData.bins;
+	int binMax = theData.binMax;
+	double binWidth = theData.binWidth;
+	double totalArea = theData.total() * binWidth;
 	
 	double normalizationFactor = 1.0;
 	if (normalize)
 	    normalizationFactor = 1.0 / totalArea;
 
-	// Clear drawing area:
-	g.clearRect(0,0,width,height);
+	// The y axis is rounded up to a nice value so it (and with it the
+	// cached layers) only changes once in a while:
 	double yScaleMax = binMax*normalizationFactor;
 	if (yScaleMax < 1.0)
 	    yScaleMax = 1.0;
+	else {
+	    double step = Layers.niceStep(yScaleMax, 10);
+	    yScaleMax = Math.ceil(yScaleMax / step) * step;
+	}
 	setScale(xMin,xMax,0,yScaleMax);
 
 	/*
 	 * If we're drawing boxes, draw them before the functions.
-	 * If we're drawing points, draw them after the functions but 
-	 * before the axes.
+	 * If we're drawing points, draw them after the functions, which
+	 * can then go offscreen with the axes.
 	 */
+	long stamp = 31 * Layers.stamp(functionList) + mode;
+	if (!layers.isValid(this, stamp)) {
+	    Graphics2D u = layers.startUnder(this);
+	    if (mode == POINTS)
+		drawFunctions(u);
+	    xDomain = new Domain(xMin,xMax,(xMax-xMin)/20,Domain.CONTINUOUS);
+	    yDomain = new Domain(0,yScaleMax,yScaleMax/20,Domain.DISCRETE);
+	    u.setColor(Color.black);
+	    drawAxis(u,xDomain,0,Graph.HORIZONTAL);
+	    drawAxis(u,yDomain,0,Graph.VERTICAL);
+	    u.dispose();
+	    layers.validate(this, stamp);
+	}
+	g.drawImage(layers.under,0,0,null);
 
-	// Draw Histogram (BOXES):
+	if (heights.length != numBins) {
+	    heights = new double[numBins];
+	    centers = new double[numBins];
+	}
+	for (int j = 0; j < numBins; j++) {
+	    heights[j] = normalizationFactor*bins[j];
+	    centers[j] = xMin+(j+0.5)*binWidth;
+	}
+
+	// Draw Histogram:
 	g.setColor(color);
-	if (mode == BOXES)
-	    for (int j = 0; j < numBins; j++)
-		fillBox(g, xMin+j*binWidth, 0.0, 
-			xMin+(j+1)*binWidth, normalizationFactor*bins[j]);
-		
-	// Draw functions:
-	i = functionList.iterator();
+	if (mode == BOXES) {
+	    fillBoxes(g,xMin,binWidth,heights,numBins,0.0);
+	    drawFunctions(g);
+	}
+	else if (mode == POINTS)
+	    drawPoints(g,centers,heights,numBins);
+
+	// The axes are drawn again over the boxes, but not their labels:
+	g.setColor(Color.black);
+	if (mode == BOXES) {
+	    drawAxisLine(g,xDomain,0,Graph.HORIZONTAL);
+	    drawAxisLine(g,yDomain,0,Graph.VERTICAL);
+	}
+	drawOutOfRange(g, theData.underflow, theData.overflow);
+
+	if (event.shouldCommit()) {
+	    event.graph = "Histogram";
+	    event.width = getWidth();
+	    event.height = getHeight();
+	    event.points = numBins;
+	    event.commit();
+	}
+    }
+
+    /**
+     * Draws all of the functions.
+     *
+     * @param g the Graphics element with which to draw.
+     */
+    private void drawFunctions(Graphics g)
+    {
+	Iterator i = functionList.iterator();
 	while (i.hasNext()) {
 	    Function F = (Function) i.next();
 	    F.draw(g,this);
 	}
-	
-	// Draw Histogram (POINTS):
-	g.setColor(color);
-	if (mode == POINTS)
-	    for (int j = 0; j < numBins; j++)
-		drawPoint(g,xMin+(j+0.5)*binWidth, normalizationFactor*bins[j]);
+    }
 
-	g.setColor(Color.black);
-	drawAxis(g,xMin,xMax,(xMax-xMin)/20,Domain.CONTINUOUS,0,Graph.HORIZONTAL);
-	drawAxis(g,0,yScaleMax,yScaleMax/20,
-		 Domain.DISCRETE,0,Graph.VERTICAL);
+    /**
+     * Writes how many walkers fell off of each end of the x axis in the
+     * top corners of the graph, if any did.
+     *
+     * @param g the Graphics element with which to draw.
+     * @param under the number of walkers below xMin
+     * @param over the number of walkers at or above xMax
+     */
+    void drawOutOfRange(Graphics g, long under, long over)
+    {
+	FontMetrics fm = g.getFontMetrics();
+	int y = getTopMargin() + fm.getAscent();
+	if (under > 0)
+	    g.drawString("< " + under, getLeftMargin(), y);
+	if (over > 0) {
+	    String s = over + " >";
+	    g.drawString(s, width - getRightMargin() - fm.stringWidth(s), y);
+	}
     }
 }
 
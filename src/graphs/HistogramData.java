@@ -0,0 +1,93 @@
+package graphs;
+
+import dmc.Accumulator;
+import dmc.DMC;
+import dmc.Walker;
+import java.util.Vector;
+import java.util.Iterator;
+
+/**
+ * This class keeps the bins of the current walker population for the
+ * Histogram class.  It is registered with a simulation as an Accumulator,
+ * so the bins are filled once per iteration by the simulation itself and
+ * painting a histogram does not depend on the number of walkers.
+ */
+public class HistogramData extends Binner implements Accumulator
+{
+    /**
+     * The largest count of any one bin as of the last iteration.
+     */
+    public int binMax;
+
+    /**
+     * Creates a new, empty dataset with the values given.
+     *
+     * @param xMin the minimum x value
+     * @param xMax the maximum x value
+     * @param numBins the number of bins to separate the data into
+     */
+    public HistogramData(double xMin, double xMax, int numBins)
+    {
+	super(xMin, xMax, numBins);
+    }
+
+    /**
+     * Refills the bins from a whole vector of walkers.  This is for when
+     * the binning changes between iterations, such as while paused.
+     *
+     * @param v The vector of walkers to bin.
+     */
+    public void fill(Vector<?> v)
+    {
+	clear();
+	Iterator<?> i = v.iterator();
+	while (i.hasNext())
+	    add(((Walker) i.next()).x, 1);
+	binMax = max();
+    }
+
+    /**
+     * Makes this dataset a copy of another, such as for a snapshot that
+     * is painted while the simulation goes on binning the original.
+     *
+     * @param d The dataset to copy.
+     */
+    public void copyFrom(HistogramData d)
+    {
+	super.copyFrom(d);
+	binMax = d.binMax;
+    }
+
+    /**
+     * Empties the bins for the new population.
+     *
+     * @param simulation The simulation doing the observing.
+     * @return Always true, every population is binned.
+     */
+    public boolean startIteration(DMC simulation)
+    {
+	clear();
+	return true;
+    }
+
+    /**
+     * Adds a walker to the bins.
+     *
+     * @param x The position of the walker.
+     * @param copies The number of walkers at that position.
+     */
+    public void observe(double x, int copies)
+    {
+	add(x, copies);
+    }
+
+    /**
+     * Finds the largest bin of the new population.
+     *
+     * @param simulation The simulation doing the observing.
+     */
+    public void endIteration(DMC simulation)
+    {
+	binMax = max();
+    }
+}
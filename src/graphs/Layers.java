@@ -0,0 +1,178 @@
+package graphs;
+
+import java.lang.Math;
+import java.lang.System;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import java.util.Iterator;
+import java.util.Vector;
+import edu.uah.math.devices.Graph;
+
+/**
+ * This class keeps the parts of a graph that do not change from frame to
+ * frame, such as the axes, their labels and analytic functions, drawn in
+ * an offscreen image that the data is then drawn over.  The image is kept
+ * until the scale or the size of the graph changes, or the stamp given by
+ * the graph does, so each frame only the data is drawn along with one
+ * opaque image, which is about as cheap as clearing the graph.
+ * <p>
+ * A graph uses it like this:
+ * <pre>
+ *     setScale(...);
+ *     if (!layers.isValid(this, stamp)) {
+ *         Graphics2D u = layers.startUnder(this);  ...  u.dispose();
+ *         layers.validate(this, stamp);
+ *     }
+ *     g.drawImage(layers.under, 0, 0, null);
+ *     ... the data ...
+ * </pre>
+ * Since every change of scale means drawing the layer again, graphs
+ * whose range follows the data round it out to nice values with
+ * niceStep(), so it only changes once in a while.
+ */
+public class Layers
+{
+    /**
+     * The layer drawn under the data.
+     */
+    public BufferedImage under;
+
+    /**
+     * The scale the layers were drawn for.
+     */
+    private double xMin, xMax, yMin, yMax;
+
+    /**
+     * The size the layers were drawn for.
+     */
+    private int width, height;
+
+    /**
+     * The stamp the layers were drawn for.
+     */
+    private long stamp;
+
+    /**
+     * Whether or not the layer has been drawn.
+     */
+    private boolean valid;
+
+    /**
+     * Returns whether or not the layers were drawn for the graph as it is
+     * now scaled and sized, and for the given stamp.
+     *
+     * @param graph The graph the layers are for.
+     * @param stamp Anything else the layers depend on, such as the
+     *              functions drawn and their colors.
+     * @return whether or not the layers can be used as they are
+     */
+    public boolean isValid(Graph graph, long stamp)
+    {
+	return valid && this.stamp == stamp
+	    && width == graph.getWidth() && height == graph.getHeight()
+	    && xMin == graph.getXMin() && xMax == graph.getXMax()
+	    && yMin == graph.getYMin() && yMax == graph.getYMax();
+    }
+
+    /**
+     * Marks the layers as drawn for the graph as it is now and the stamp.
+     *
+     * @param graph The graph the layers are for.
+     * @param stamp Anything else the layers depend on.
+     */
+    public void validate(Graph graph, long stamp)
+    {
+	this.stamp = stamp;
+	xMin = graph.getXMin();
+	xMax = graph.getXMax();
+	yMin = graph.getYMin();
+	yMax = graph.getYMax();
+	valid = true;
+    }
+
+    /**
+     * Makes the layer be drawn again next time.
+     */
+    public void invalidate()
+    {
+	valid = false;
+    }
+
+    /**
+     * Starts drawing the layer under the data, which is filled with the
+     * background color of the graph.
+     *
+     * @param graph The graph the layers are for.
+     * @return the graphics element to draw the layer with
+     */
+    public Graphics2D startUnder(Graph graph)
+    {
+	resize(graph);
+	Graphics2D g = under.createGraphics();
+	g.setFont(graph.getFont());
+	g.setColor(graph.getBackground());
+	g.fillRect(0, 0, width, height);
+	return g;
+    }
+
+    /**
+     * Makes a new image if the size of the graph has changed.
+     *
+     * @param graph The graph the layers are for.
+     */
+    private void resize(Graph graph)
+    {
+	int w = Math.max(1, graph.getWidth());
+	int h = Math.max(1, graph.getHeight());
+	if (under == null || w != width || h != height) {
+	    width = w;
+	    height = h;
+	    under = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+	    valid = false;
+	}
+    }
+
+    /**
+     * Returns a stamp for a list of functions that changes when one is
+     * added, removed or replaced, or changes color.
+     *
+     * @param functions The list of functions.
+     * @return the stamp
+     */
+    public static long stamp(Vector<?> functions)
+    {
+	long s = functions.size();
+	Iterator<?> i = functions.iterator();
+	while (i.hasNext()) {
+	    Function F = (Function) i.next();
+	    s = 31 * s + System.identityHashCode(F);
+	    s = 31 * s + (F.color == null ? 0 : F.color.getRGB());
+	}
+	return s;
+    }
+
+    /**
+     * Returns the smallest nice step (1, 2 or 5 times a power of ten)
+     * that cuts the span into at most the given number of pieces.
+     *
+     * @param span The width of the range.
+     * @param pieces The most pieces to cut it into.
+     * @return the step
+     */
+    public static double niceStep(double span, int pieces)
+    {
+	double raw = span / pieces;
+	if (!(raw > 0.0) || Double.isInfinite(raw))
+	    return 1.0;
+	double p = Math.pow(10.0, Math.floor(Math.log(raw) / Math.log(10.0)));
+	if (raw <= p)
+	    return p;
+	if (raw <= 2.0 * p)
+	    return 2.0 * p;
+	if (raw <= 5.0 * p)
+	    return 5.0 * p;
+	return 10.0 * p;
+    }
+}
@@ -0,0 +1,49 @@
+package graphs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for the end of an iteration of a Phi_0
+ * estimate: binning the walkers set aside as out of range, growing the
+ * range if need be.  The walkers in range are binned one at a time as
+ * the simulation branches them, which is part of the branch event.
+ * Disabled unless a recording turns it on.
+ */
+@Name("dmc.Phi0Accumulate")
+@Label("Phi0 Accumulate")
+@Description("Settling an iteration of walkers into the Phi0 estimate")
+@Category("Diffusion Monte Carlo")
+@Enabled(false)
+@StackTrace(false)
+public class Phi0AccumulateEvent extends Event
+{
+    /**
+     * Whether or not the iteration was binned (or skipped as correlated).
+     */
+    @Label("Binned")
+    public boolean binned;
+
+    /**
+     * The number of iterations between binned ones.
+     */
+    @Label("Stride")
+    public int stride;
+
+    /**
+     * The number of populations binned so far.
+     */
+    @Label("Populations Binned")
+    public long numBinned;
+
+    /**
+     * The width of the range after settling.
+     */
+    @Label("Range Width")
+    public double rangeWidth;
+}
@@ -1,36 +1,80 @@
 package graphs;
 
+import dmc.Accumulator;
+import dmc.Autocorrelation;
+import dmc.DMC;
 import dmc.Walker;
 import java.util.Vector;
 import java.util.Iterator;
 
 /**
  * This class keeps track of the data necessary to graph an estimate
- * of Phi_0 in the Phi0Histogram class.
+ * of Phi_0 in the Phi0Histogram class.  It can either be registered
+ * with a simulation as an Accumulator, or be handed whole vectors of
+ * walkers.  The counts are kept in per-thread stripes of longs, so it can
+ * be fed from several threads and gather far more than 2^31 samples.
+ * <p>
+ * Consecutive populations are almost the same, so as an Accumulator it
+ * only bins every stride'th iteration, where the stride is chosen from
+ * the integrated autocorrelation time of the walkers' average potential
+ * energy.  Samples taken a correlation time apart carry nearly all of
+ * the information of the ones in between.
+ * <p>
+ * By default the counts are kept in a fine base histogram whose range
+ * grows to take in every walker, and graphs derive whatever coarser
+ * binning they show from it with rebin().  Changing the display binning
+ * then never means gathering the statistics over again.
  *
  * @author Ian Terrell
  */
-public class Phi0EstimateData
+public class Phi0EstimateData extends StripedBinner implements Accumulator
 {
     /**
-     * An array containing a count of how many walkers are in each bin.
+     * The default number of bins of the base histogram.
      */
-    public int[] bins;
+    public final static int DEFAULT_BASE_BINS = 1 << 14;
 
     /**
-     * The number of bins to separate the data into.
+     * Whether or not to skip correlated iterations when accumulating.
      */
-    public int numBins;
-    
+    public boolean thinning = true;
+
     /**
-     * The max and min values of the x axis.
+     * The largest number of iterations between two binned ones.
      */
-    public double xMin, xMax;
+    public int maxStride = 100;
 
     /**
-     * The width of each bin.
+     * The current number of iterations between two binned ones.
      */
-    public double binWidth;
+    public int stride = 1;
+
+    /**
+     * The number of populations binned so far, so a reader can tell
+     * whether the counts have changed.
+     */
+    public long numBinned;
+
+    /**
+     * Estimates the correlation time of the simulation.
+     */
+    private Autocorrelation autocorrelation = new Autocorrelation();
+
+    /**
+     * The number of iterations since the last binned one.
+     */
+    private int sinceBinned;
+
+    /**
+     * Whether or not the iteration in progress is being binned.
+     */
+    private boolean binning;
+
+    /**
+     * The stripe of the thread binning, got once per population binned
+     * rather than once per walker.
+     */
+    private Stripe stripe;
 
     /**
      * Creates a new dataset with the values given.
@@ -41,31 +85,107 @@ public class Phi0EstimateData
      */
     public Phi0EstimateData(double xMin, double xMax, int numBins)
     {
-	this.xMin = xMin;
-	this.xMax = xMax;
-	this.numBins = numBins;
-	bins = new int[numBins];
-	binWidth = (xMax - xMin) / numBins;
-	for (int i = 0; i < numBins; i++)
-	    bins[i] = 0;
+	super(xMin, xMax, numBins);
+    }
+
+    /**
+     * Creates a new dataset with a fine, auto-ranging base histogram
+     * starting out over the range given.
+     *
+     * @param xMin the initial minimum x value
+     * @param xMax the initial maximum x value
+     */
+    public Phi0EstimateData(double xMin, double xMax)
+    {
+	this(xMin, xMax, DEFAULT_BASE_BINS);
+	autoRange = true;
     }
     
     /**
-     * Adds a vector of data to the current dataset.  If it's not in
-     * the bounds, which is possible, do nothing.
+     * Adds a vector of data to the current dataset.  Walkers out of
+     * the bounds, which is possible, are counted as under- or overflow
+     * unless auto-ranging.
      *
      * @param v The vector of data to add.
      */
     public void addData(Vector v)
     {
+	stripe = getStripe();
 	Iterator i = v.iterator();
-	while (i.hasNext()) {
-	    double x = ((Walker) i.next()).x;
-	    int index = (int) ((x-xMin)/binWidth);
-	    try {
-		bins[index]++;
-	    }
-	    catch (ArrayIndexOutOfBoundsException aioobe) { }
+	while (i.hasNext())
+	    observe(((Walker) i.next()).x, 1);
+	settle();
+	numBinned++;
+    }
+
+    /**
+     * Updates the correlation time estimate and decides whether or not
+     * this iteration is far enough from the last binned one to be binned.
+     *
+     * @param simulation The simulation doing the observing.
+     * @return Whether or not to bin the walkers of this iteration.
+     */
+    public boolean startIteration(DMC simulation)
+    {
+	autocorrelation.add(simulation.averagePotential);
+	binning = true;
+	stripe = getStripe();
+	if (!thinning) {
+	    stride = 1;
+	    numBinned++;
+	    return true;
+	}
+	// Bin every iteration until there is an estimate to go on:
+	if (autocorrelation.isReady())
+	    stride = Math.max(1, Math.min(maxStride, 
+					  (int) autocorrelation.time()));
+	if (++sinceBinned < stride) {
+	    binning = false;
+	    return false;
+	}
+	sinceBinned = 0;
+	numBinned++;
+	return true;
+    }
+
+    /**
+     * Returns the current estimate of the integrated autocorrelation
+     * time of the simulation, in iterations.
+     *
+     * @return the correlation time
+     */
+    public double getCorrelationTime()
+    {
+	return autocorrelation.time();
+    }
+
+    /**
+     * Adds a walker to the current dataset.
+     *
+     * @param x The position of the walker.
+     * @param copies The number of walkers at that position.
+     */
+    public void observe(double x, int copies)
+    {
+	stripe.add(x, copies);
+    }
+
+    /**
+     * Takes in any walkers that fell outside of the range this iteration.
+     *
+     * @param simulation The simulation doing the observing.
+     */
+    public void endIteration(DMC simulation)
+    {
+	Phi0AccumulateEvent event = new Phi0AccumulateEvent();
+	event.begin();
+	settle();
+	if (event.shouldCommit()) {
+	    event.binned = binning;
+	    event.stride = stride;
+	    event.numBinned = numBinned;
+	    event.rangeWidth = xMax - xMin;
+	    event.commit();
 	}
     }
 }
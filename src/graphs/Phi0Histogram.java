@@ -34,9 +34,35 @@ public class Phi0Histogram extends Graph
     
     
     /**
-     * The data for the graph.
+     * The data for the graph: a Phi0EstimateData, or a copy of one.
      */
-    public Phi0EstimateData theData;
+    public StripedBinner theData;
+
+    /**
+     * The number of bins to show.
+     */
+    public int numBins;
+
+    /**
+     * The max and min values of the x axis.
+     */
+    public double xMin, xMax;
+
+    /**
+     * The counts of the bins shown, scaled to their heights while
+     * painting, reused between repaints.
+     */
+    private double[] bins;
+
+    /**
+     * The centers of the bins shown, reused between repaints.
+     */
+    private double[] centers = new double[0];
+
+    /**
+     * The axes and functions, drawn offscreen.
+     */
+    private Layers layers = new Layers();
     
     /**
      * The list of functions to graph.
@@ -50,17 +76,21 @@ public class Phi0Histogram extends Graph
 
     /**
      * Creates an estimate histogram of phi_0 from the given parameters.
+     * It starts out showing 200 bins over the current range of the data.
      *
      * @param width The width in pixels
      * @param height the height in pixels
      * @param data The data for the graph
      */
-    public Phi0Histogram(int width, int height, Phi0EstimateData data)
+    public Phi0Histogram(int width, int height, StripedBinner data)
     {
 	super();
 	this.width = width;
 	this.height = height;
 	theData = data;
+	xMin = data.xMin;
+	xMax = data.xMax;
+	numBins = 200;
 	setPreferredSize(new Dimension(width,height));
 	setToolTipText("Phi_0 Estimate Graph");
 	functionList = new Vector();
@@ -75,35 +105,55 @@ public class Phi0Histogram extends Graph
      */ 
     public void paintComponent(Graphics g)
     {
+	GraphPaintEvent event = new GraphPaintEvent();
+	event.begin();
+	bins = theData.rebin(xMin, xMax, numBins, bins);
+	double binWidth = (xMax - xMin) / numBins;
 	double normalizationFactor = 1.0;
 	double tmcount = 0.0;
-	for (int j = 0; j < theData.numBins; j++)
-	    tmcount += theData.bins[j]*theData.bins[j];
-	normalizationFactor = 1.0 / Math.sqrt(tmcount*theData.binWidth);
+	for (int j = 0; j < numBins; j++)
+	    tmcount += bins[j]*bins[j];
+	normalizationFactor = 1.0 / Math.sqrt(tmcount*binWidth);
 
-	// Clear drawing area:
-	g.clearRect(0,0,width,height);
 	double yScaleMax = 1.0;
-	setScale(theData.xMin,theData.xMax,0,yScaleMax);
-		
-	// Draw functions:
-	Iterator i = functionList.iterator();
-	while (i.hasNext()) {
-	    Function F = (Function) i.next();
-	    F.draw(g,this);
+	setScale(xMin,xMax,0,yScaleMax);
+
+	// Draw functions and axes offscreen, under the data:
+	long stamp = Layers.stamp(functionList);
+	if (!layers.isValid(this, stamp)) {
+	    Graphics2D u = layers.startUnder(this);
+	    Iterator i = functionList.iterator();
+	    while (i.hasNext()) {
+		Function F = (Function) i.next();
+		F.draw(u,this);
+	    }
+	    u.setColor(Color.black);
+	    drawAxis(u,xMin,xMax,(xMax-xMin)/20,
+		     Domain.CONTINUOUS,0,Graph.HORIZONTAL);
+	    drawAxis(u,0,yScaleMax,yScaleMax/20,
+		     Domain.DISCRETE,0,Graph.VERTICAL);
+	    u.dispose();
+	    layers.validate(this, stamp);
 	}
+	g.drawImage(layers.under,0,0,null);
 	
 	// Draw Histogram:
+	if (centers.length != numBins)
+	    centers = new double[numBins];
+	for (int j = 0; j < numBins; j++) {
+	    centers[j] = xMin+(j+0.5)*binWidth;
+	    bins[j] *= normalizationFactor;
+	}
 	g.setColor(color);
-	for (int j = 0; j < theData.numBins; j++)
-	    drawPoint(g,theData.xMin+(j+0.5)*theData.binWidth, 
-		      normalizationFactor*theData.bins[j]);
-
-	g.setColor(Color.black);
-	drawAxis(g,theData.xMin,theData.xMax,(theData.xMax-theData.xMin)/20,
-		 Domain.CONTINUOUS,0,Graph.HORIZONTAL);
-	drawAxis(g,0,yScaleMax,yScaleMax/20,
-		 Domain.DISCRETE,0,Graph.VERTICAL);
+	drawPoints(g,centers,bins,numBins);
+
+	if (event.shouldCommit()) {
+	    event.graph = "Phi0 Estimate";
+	    event.width = getWidth();
+	    event.height = getHeight();
+	    event.points = numBins;
+	    event.commit();
+	}
     }
 }
 
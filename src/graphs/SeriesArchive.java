@@ -0,0 +1,305 @@
+package graphs;
+
+import java.lang.Math;
+
+/**
+ * This class keeps the whole history of a series in a bounded amount of
+ * memory, round-robin style.  Points are summed into buckets that keep
+ * the min, max and mean of the y values they cover.  The buckets are
+ * kept in levels: each level holds a fixed number of buckets, and when a
+ * level is full its oldest bucket is merged into a bucket of the next,
+ * coarser level.  The last level never drops anything; when it is full
+ * its buckets are merged in pairs.  Recent history is thus kept finely
+ * and older history more and more coarsely, but all of it is kept.
+ * <p>
+ * GraphData puts the points it drops here, oldest first.
+ */
+public class SeriesArchive
+{
+    /**
+     * The default number of levels.
+     */
+    public final static int DEFAULT_LEVELS = 6;
+
+    /**
+     * The default number of buckets in each level.
+     */
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The default number of points, or buckets of the level below, that
+     * make up one bucket.
+     */
+    public final static int DEFAULT_FACTOR = 4;
+
+    /**
+     * The smallest and largest y value of all of the points added.
+     */
+    public double yMin, yMax;
+
+    /**
+     * The x value of the first point added.
+     */
+    public double xMin;
+
+    /**
+     * The number of points added.
+     */
+    public long count;
+
+    /**
+     * The number of buckets in each level.
+     */
+    private int capacity;
+
+    /**
+     * The number of points, or buckets of the level below, that make up
+     * one bucket.
+     */
+    private int factor;
+
+    /**
+     * The levels, finest first.
+     */
+    private Level[] levels;
+
+    /**
+     * Creates an empty archive with the given parameters.
+     *
+     * @param numLevels The number of levels.
+     * @param capacity The number of buckets in each level.
+     * @param factor The number of points, or buckets of the level below,
+     *               that make up one bucket.
+     */
+    public SeriesArchive(int numLevels, int capacity, int factor)
+    {
+	this.capacity = capacity;
+	this.factor = factor;
+	levels = new Level[numLevels];
+	for (int i = 0; i < numLevels; i++)
+	    levels[i] = new Level();
+	yMin = Double.POSITIVE_INFINITY;
+	yMax = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Creates an empty archive with the default parameters.
+     */
+    public SeriesArchive()
+    {
+	this(DEFAULT_LEVELS, DEFAULT_CAPACITY, DEFAULT_FACTOR);
+    }
+
+    /**
+     * Adds a point.  The x's coming in must be monotonically increasing.
+     *
+     * @param x The x value of the point.
+     * @param y The y value of the point.
+     */
+    public void add(double x, double y)
+    {
+	if (count++ == 0)
+	    xMin = x;
+	if (y < yMin)
+	    yMin = y;
+	if (y > yMax)
+	    yMax = y;
+	take(0, x, x, y, y, y, 1);
+    }
+
+    /**
+     * Merges a point or bucket into the open bucket of a level, closing
+     * the open bucket if it is then complete.
+     *
+     * @param k The level.
+     * @param x0 The x value of the first point.
+     * @param x1 The x value of the last point.
+     * @param lo The smallest y value.
+     * @param hi The largest y value.
+     * @param sum The sum of the y values.
+     * @param n The number of points.
+     */
+    private void take(int k, double x0, double x1, double lo, double hi,
+		      double sum, long n)
+    {
+	Level l = levels[k];
+	if (l.openItems == 0) {
+	    l.openX0 = x0;
+	    l.openLo = lo;
+	    l.openHi = hi;
+	    l.openSum = 0.0;
+	    l.openN = 0;
+	}
+	l.openX1 = x1;
+	l.openLo = Math.min(l.openLo, lo);
+	l.openHi = Math.max(l.openHi, hi);
+	l.openSum += sum;
+	l.openN += n;
+	if (++l.openItems < l.span)
+	    return;
+	l.openItems = 0;
+
+	if (l.size == capacity) {
+	    if (k + 1 < levels.length) {
+		int i = l.start;
+		take(k + 1, l.x0[i], l.x1[i], l.lo[i], l.hi[i], l.sum[i], l.n[i]);
+		l.start = (l.start + 1) % capacity;
+		l.size--;
+	    }
+	    else
+		l.halve();
+	}
+	if (l.x0 == null)
+	    l.allocate();
+	int i = (l.start + l.size++) % capacity;
+	l.x0[i] = l.openX0;
+	l.x1[i] = l.openX1;
+	l.lo[i] = l.openLo;
+	l.hi[i] = l.openHi;
+	l.sum[i] = l.openSum;
+	l.n[i] = l.openN;
+    }
+
+    /**
+     * Returns the number of buckets, counting the ones not yet complete.
+     *
+     * @return the number of buckets
+     */
+    public int numBuckets()
+    {
+	int b = 0;
+	for (int k = 0; k < levels.length; k++)
+	    b += levels[k].size + (levels[k].openItems > 0 ? 1 : 0);
+	return b;
+    }
+
+    /**
+     * Copies out all of the buckets, oldest first.  Each array must hold
+     * at least numBuckets() values.  The means may be left out, as by a
+     * graph drawing only the range of each bucket.
+     *
+     * @param x Where to put the x value of the middle of each bucket.
+     * @param lo Where to put the smallest y value of each bucket.
+     * @param hi Where to put the largest y value of each bucket.
+     * @param mean Where to put the mean y value of each bucket, or null
+     *             to leave them out.
+     * @return the number of buckets copied
+     */
+    public int getBuckets(double[] x, double[] lo, double[] hi, double[] mean)
+    {
+	// A level's oldest bucket is always newer than everything in the
+	// levels above it, and its open bucket newer than its others:
+	int b = 0;
+	for (int k = levels.length - 1; k >= 0; k--) {
+	    Level l = levels[k];
+	    for (int j = 0; j < l.size; j++) {
+		int i = (l.start + j) % capacity;
+		x[b] = 0.5 * (l.x0[i] + l.x1[i]);
+		lo[b] = l.lo[i];
+		hi[b] = l.hi[i];
+		if (mean != null)
+		    mean[b] = l.sum[i] / l.n[i];
+		b++;
+	    }
+	    if (l.openItems > 0) {
+		x[b] = 0.5 * (l.openX0 + l.openX1);
+		lo[b] = l.openLo;
+		hi[b] = l.openHi;
+		if (mean != null)
+		    mean[b] = l.openSum / l.openN;
+		b++;
+	    }
+	}
+	return b;
+    }
+
+    /**
+     * One level of buckets, kept as a ring buffer.
+     */
+    private class Level
+    {
+	/**
+	 * The x values of the first and last points of each bucket.
+	 */
+	double[] x0, x1;
+
+	/**
+	 * The smallest and largest y values of each bucket.
+	 */
+	double[] lo, hi;
+
+	/**
+	 * The sum of the y values of each bucket.
+	 */
+	double[] sum;
+
+	/**
+	 * The number of points in each bucket.
+	 */
+	long[] n;
+
+	/**
+	 * The index of the oldest bucket, and the number of buckets.
+	 */
+	int start, size;
+
+	/**
+	 * The number of points or lower buckets that make up a bucket.
+	 */
+	int span = factor;
+
+	/**
+	 * The bucket being filled.
+	 */
+	double openX0, openX1, openLo, openHi, openSum;
+	long openN;
+
+	/**
+	 * The number of points or lower buckets in the open bucket.
+	 */
+	int openItems;
+
+	/**
+	 * Makes the arrays, which is put off until the level is used.
+	 */
+	void allocate()
+	{
+	    x0 = new double[capacity];
+	    x1 = new double[capacity];
+	    lo = new double[capacity];
+	    hi = new double[capacity];
+	    sum = new double[capacity];
+	    n = new long[capacity];
+	}
+
+	/**
+	 * Merges the buckets in pairs, leaving the level half full and
+	 * making every later bucket twice as wide.  Only the last level
+	 * is halved, and it never drops a bucket, so its start is 0.
+	 */
+	void halve()
+	{
+	    int m = 0;
+	    for (int j = 0; j < size; j += 2, m++) {
+		int a = (start + j) % capacity;
+		x0[m] = x0[a];
+		x1[m] = x1[a];
+		lo[m] = lo[a];
+		hi[m] = hi[a];
+		sum[m] = sum[a];
+		n[m] = n[a];
+		if (j + 1 < size) {
+		    int b = (start + j + 1) % capacity;
+		    x1[m] = x1[b];
+		    lo[m] = Math.min(lo[m], lo[b]);
+		    hi[m] = Math.max(hi[m], hi[b]);
+		    sum[m] += sum[b];
+		    n[m] += n[b];
+		}
+	    }
+	    start = 0;
+	    size = m;
+	    span *= 2;
+	}
+    }
+}
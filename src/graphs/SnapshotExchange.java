@@ -0,0 +1,129 @@
+package graphs;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class hands snapshots of a simulation's observables from the
+ * thread running it to the thread showing them, without either one ever
+ * waiting on the other.  There are three snapshots: the back one the
+ * writer fills, the front one the reader shows, and one in between that
+ * is either ready (published and not yet taken) or free (given back by
+ * the reader).  Handing one over is a single atomic swap.
+ * <p>
+ * The writer only publishes when the last snapshot it published has been
+ * taken, so until then it can keep adding to the back one (points for a
+ * data graph, say) and nothing is lost, and copying into a snapshot
+ * happens at most once per frame shown.
+ * <p>
+ * Only one thread may write and only one may read at a time, but either
+ * may be handed over to another thread as long as it is handed over
+ * safely (such as while the simulation thread is parked).
+ *
+ * @param <T> the type of the snapshots
+ */
+public abstract class SnapshotExchange<T>
+{
+    /**
+     * The snapshot being filled by the writer.
+     */
+    private T back;
+
+    /**
+     * The snapshot being shown by the reader, or null before the first
+     * one is taken.
+     */
+    private T front;
+
+    /**
+     * The snapshot published and not yet taken, if any.
+     */
+    private AtomicReference<T> ready = new AtomicReference<T>();
+
+    /**
+     * The snapshot given back by the reader and not yet reused, if any.
+     */
+    private AtomicReference<T> free = new AtomicReference<T>();
+
+    /**
+     * Creates an exchange, making the first back snapshot.
+     */
+    public SnapshotExchange()
+    {
+	back = create();
+    }
+
+    /**
+     * Makes a new, empty snapshot.  Called when the writer needs one and
+     * none is free, which only happens the first few times.
+     *
+     * @return the new snapshot
+     */
+    protected abstract T create();
+
+    /**
+     * Returns the snapshot the writer fills.  Only for the writer.
+     *
+     * @return the back snapshot
+     */
+    public T getBack()
+    {
+	return back;
+    }
+
+    /**
+     * Returns whether or not the last snapshot published has been taken,
+     * so that publish() would succeed.  Only for the writer.
+     *
+     * @return whether or not a snapshot can be published
+     */
+    public boolean canPublish()
+    {
+	return ready.get() == null;
+    }
+
+    /**
+     * Publishes the back snapshot if the last one has been taken, and
+     * makes a free (or new) snapshot the back one.  The new back snapshot
+     * holds whatever it held before, so the writer must clear whatever it
+     * adds to.  Only for the writer.
+     *
+     * @return whether or not the snapshot was published
+     */
+    public boolean publish()
+    {
+	if (!ready.compareAndSet(null, back))
+	    return false;
+	back = free.getAndSet(null);
+	if (back == null)
+	    back = create();
+	return true;
+    }
+
+    /**
+     * Takes the snapshot published last, if there is one not yet taken,
+     * and makes it the front one, giving the old front one back to the
+     * writer.  Only for the reader.
+     *
+     * @return the new front snapshot, or null if none was ready
+     */
+    public T take()
+    {
+	T s = ready.getAndSet(null);
+	if (s == null)
+	    return null;
+	if (front != null)
+	    free.set(front);
+	front = s;
+	return s;
+    }
+
+    /**
+     * Returns the snapshot being shown.  Only for the reader.
+     *
+     * @return the front snapshot, or null before the first is taken
+     */
+    public T getFront()
+    {
+	return front;
+    }
+}
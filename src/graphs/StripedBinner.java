@@ -0,0 +1,446 @@
+package graphs;
+
+import java.lang.Math;
+import java.lang.Thread;
+import java.lang.ThreadLocal;
+import java.util.Vector;
+
+/**
+ * This class sorts values into equal width bins over a range of x, like
+ * Binner, but for long running accumulations that may be fed from more
+ * than one thread.  Every thread that adds values gets its own stripe of
+ * long counts, so threads never write to the same memory and no locking
+ * is done while adding.  The stripes are only summed when the bins are
+ * read, which happens far less often than adding (once per repaint, say).
+ * <p>
+ * Reading while other threads are still adding gives counts that may be
+ * a few values behind; once they are done the counts are exact.  With
+ * long counts a run can hold far more than 2^31 samples.
+ * <p>
+ * A thread adding many values in a row can get its stripe once with
+ * getStripe() and add to it directly, skipping the lookup in add().
+ * When a thread that added values has exited, settle() folds its stripe
+ * into a base stripe that no thread adds to, so the stripes of threads
+ * come and gone (a simulation reset, say) do not pile up.
+ * <p>
+ * In auto-ranging mode values outside of the range are set aside in
+ * their stripe, and settle() later grows the range to take them in, the
+ * same way Binner does (by merging adjacent bins in pairs).  Since that
+ * touches every stripe, settle() must only be called when no thread is
+ * adding, such as at the end of an iteration.
+ */
+public class StripedBinner
+{
+    /**
+     * The most times the range will be doubled to take in values.
+     */
+    private final static int MAX_DOUBLINGS = 64;
+
+    /**
+     * The number of bins to separate the data into.
+     */
+    public int numBins;
+
+    /**
+     * The max and min values of the x axis.
+     */
+    public double xMin, xMax;
+
+    /**
+     * The width of each bin.
+     */
+    public double binWidth;
+
+    /**
+     * Whether or not to grow the range to take in values outside of it.
+     */
+    public boolean autoRange;
+
+    /**
+     * The reciprocal of the bin width.
+     */
+    private double scale;
+
+    /**
+     * All of the stripes: the base stripe first, then those of the
+     * threads that have added values and not yet been folded into it.
+     */
+    private Vector<Stripe> stripes = new Vector<Stripe>();
+
+    /**
+     * The stripe of counts no thread adds to: those of threads that have
+     * exited, and those copied from other bins.
+     */
+    private Stripe base;
+
+    /**
+     * Each thread's stripe.
+     */
+    private ThreadLocal<Stripe> localStripe = new ThreadLocal<Stripe>();
+
+    /**
+     * The merged counts, reused between reads.
+     */
+    private long[] merged;
+
+    /**
+     * Scratch space for the counts of a stripe while the range is doubled.
+     */
+    private long[] old;
+
+    /**
+     * Creates a new set of empty bins with the values given.
+     *
+     * @param xMin the minimum x value
+     * @param xMax the maximum x value
+     * @param numBins the number of bins to separate the data into
+     */
+    public StripedBinner(double xMin, double xMax, int numBins)
+    {
+	this.xMin = xMin;
+	this.xMax = xMax;
+	this.numBins = numBins;
+	binWidth = (xMax - xMin) / numBins;
+	scale = 1.0 / binWidth;
+	merged = new long[numBins];
+	base = new Stripe(this, null);
+	stripes.add(base);
+    }
+
+    /**
+     * Adds a value to the calling thread's stripe.
+     *
+     * @param x The value to add.
+     * @param n The number of times to add it.
+     */
+    public void add(double x, int n)
+    {
+	getStripe().add(x, n);
+    }
+
+    /**
+     * Returns the calling thread's stripe, making one if it has none.
+     *
+     * @return the calling thread's stripe
+     */
+    public Stripe getStripe()
+    {
+	Stripe s = localStripe.get();
+	if (s == null) {
+	    s = new Stripe(this, Thread.currentThread());
+	    stripes.add(s);
+	    localStripe.set(s);
+	}
+	return s;
+    }
+
+    /**
+     * Grows the range to take in all of the values set aside since the
+     * last call, and bins them (auto-ranging only), first folding the
+     * stripes of threads that have exited into the base stripe.  No
+     * thread may be adding values (or making a stripe) while this runs.
+     * It is called every iteration, so it allocates nothing unless the
+     * range grows.
+     */
+    public void settle()
+    {
+	if (stripes.size() > 1)
+	    retire();
+	int numStripes = stripes.size();
+	double lo = Double.POSITIVE_INFINITY;
+	double hi = Double.NEGATIVE_INFINITY;
+	for (int j = 0; j < numStripes; j++) {
+	    Stripe st = stripes.get(j);
+	    for (int i = 0; i < st.numPending; i++) {
+		lo = Math.min(lo, st.pendingX[i]);
+		hi = Math.max(hi, st.pendingX[i]);
+	    }
+	}
+	if (lo > hi)
+	    return;
+	for (int i = 0; i < MAX_DOUBLINGS && lo < xMin; i++)
+	    doubleRange(true);
+	for (int i = 0; i < MAX_DOUBLINGS && hi >= xMax; i++)
+	    doubleRange(false);
+	for (int j = 0; j < numStripes; j++) {
+	    Stripe st = stripes.get(j);
+	    int n = st.numPending;
+	    st.numPending = 0;
+	    for (int i = 0; i < n; i++) {
+		double x = st.pendingX[i];
+		int index = (int) ((x - xMin) * scale);
+		if (x < xMin)
+		    st.underflow += st.pendingN[i];
+		else if (x >= xMax)
+		    st.overflow += st.pendingN[i];
+		else
+		    st.bins[Math.min(index, numBins - 1)] += st.pendingN[i];
+	    }
+	}
+    }
+
+    /**
+     * Folds the counts and set aside values of the stripes of threads
+     * that have exited into the base stripe, and drops those stripes.
+     */
+    private void retire()
+    {
+	for (int j = stripes.size() - 1; j > 0; j--) {
+	    Stripe st = stripes.get(j);
+	    if (st.owner.isAlive())
+		continue;
+	    for (int i = 0; i < numBins; i++)
+		base.bins[i] += st.bins[i];
+	    base.underflow += st.underflow;
+	    base.overflow += st.overflow;
+	    for (int i = 0; i < st.numPending; i++)
+		base.setAside(st.pendingX[i], st.pendingN[i]);
+	    stripes.remove(j);
+	}
+    }
+
+    /**
+     * Merges the bins of every stripe in pairs, doubling the range toward
+     * one side.  See Binner.
+     *
+     * @param low Whether to grow toward lower x (else toward higher x).
+     */
+    private void doubleRange(boolean low)
+    {
+	if (old == null || old.length != numBins)
+	    old = new long[numBins];
+	int offset = low ? numBins : 0;
+	int numStripes = stripes.size();
+	for (int j = 0; j < numStripes; j++) {
+	    long[] b = stripes.get(j).bins;
+	    System.arraycopy(b, 0, old, 0, numBins);
+	    for (int i = 0; i < numBins; i++)
+		b[i] = 0;
+	    for (int i = 0; i < numBins; i++)
+		b[(offset + i) / 2] += old[i];
+	}
+	if (low)
+	    xMin -= xMax - xMin;
+	else
+	    xMax += xMax - xMin;
+	binWidth *= 2.0;
+	scale = 1.0 / binWidth;
+    }
+
+    /**
+     * Makes these bins a copy of others, with all of the stripes of the
+     * others summed into the base stripe.  Values set aside and not yet
+     * settled are left out.  The others must not be settled while this
+     * runs, and these must only ever be copied into, not added to.
+     *
+     * @param b The bins to copy.
+     */
+    public void copyFrom(StripedBinner b)
+    {
+	long[] counts = b.getBins();
+	if (numBins != b.numBins) {
+	    numBins = b.numBins;
+	    merged = new long[numBins];
+	    base = new Stripe(this, null);
+	    stripes.clear();
+	    stripes.add(base);
+	    localStripe = new ThreadLocal<Stripe>();
+	}
+	System.arraycopy(counts, 0, base.bins, 0, numBins);
+	base.underflow = b.getUnderflow();
+	base.overflow = b.getOverflow();
+	xMin = b.xMin;
+	xMax = b.xMax;
+	binWidth = b.binWidth;
+	scale = b.scale;
+	autoRange = b.autoRange;
+    }
+
+    /**
+     * Returns the counts of all of the stripes summed together.  The array
+     * returned is reused by the next call.
+     *
+     * @return the count of values in each bin
+     */
+    public long[] getBins()
+    {
+	Object[] all = stripes.toArray();
+	for (int i = 0; i < numBins; i++)
+	    merged[i] = 0;
+	for (int j = 0; j < all.length; j++) {
+	    long[] b = ((Stripe) all[j]).bins;
+	    for (int i = 0; i < numBins; i++)
+		merged[i] += b[i];
+	}
+	return merged;
+    }
+
+    /**
+     * Sums the counts into a different number of bins over a different
+     * range.  Each bin's count is split between the new bins it overlaps
+     * in proportion to the overlap, so any binning at least as coarse as
+     * this one comes out essentially exact.  Counts off either end of the
+     * new range are left out.
+     *
+     * @param x0 the minimum x value of the new bins
+     * @param x1 the maximum x value of the new bins
+     * @param n the number of new bins
+     * @param result where to put the new counts, or null to make an array
+     * @return the count of values in each new bin
+     */
+    public double[] rebin(double x0, double x1, int n, double[] result)
+    {
+	if (result == null || result.length != n)
+	    result = new double[n];
+	for (int k = 0; k < n; k++)
+	    result[k] = 0.0;
+	long[] b = getBins();
+	double w = (x1 - x0) / n;
+	int k = 0;
+	for (int i = 0; i < numBins && k < n; i++) {
+	    if (b[i] == 0)
+		continue;
+	    double lo = xMin + i * binWidth;
+	    double hi = lo + binWidth;
+	    if (hi <= x0)
+		continue;
+	    if (lo >= x1)
+		break;
+	    // Find the first new bin this one overlaps:
+	    while (k < n && x0 + (k + 1) * w <= lo)
+		k++;
+	    for (int m = k; m < n; m++) {
+		double edgeLo = x0 + m * w;
+		double edgeHi = edgeLo + w;
+		if (edgeLo >= hi)
+		    break;
+		double overlap = Math.min(hi, edgeHi) - Math.max(lo, edgeLo);
+		if (overlap > 0.0)
+		    result[m] += b[i] * overlap / binWidth;
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * Returns the number of values below xMin, over all stripes.
+     *
+     * @return the underflow count
+     */
+    public long getUnderflow()
+    {
+	Object[] all = stripes.toArray();
+	long t = 0;
+	for (int j = 0; j < all.length; j++)
+	    t += ((Stripe) all[j]).underflow;
+	return t;
+    }
+
+    /**
+     * Returns the number of values at or above xMax (or NaN), over all
+     * stripes.
+     *
+     * @return the overflow count
+     */
+    public long getOverflow()
+    {
+	Object[] all = stripes.toArray();
+	long t = 0;
+	for (int j = 0; j < all.length; j++)
+	    t += ((Stripe) all[j]).overflow;
+	return t;
+    }
+
+    /**
+     * One thread's share of the counts.  Only the thread that owns it
+     * may add to it; the base stripe has no owner.
+     */
+    public static class Stripe
+    {
+	/**
+	 * The thread that writes to this stripe, or null for the base
+	 * stripe.
+	 */
+	final Thread owner;
+
+	/**
+	 * The bins this is a stripe of.
+	 */
+	final StripedBinner parent;
+
+	/**
+	 * The count of values in each bin.
+	 */
+	final long[] bins;
+
+	/**
+	 * The counts of values off either end of the range.
+	 */
+	long underflow, overflow;
+
+	/**
+	 * The values set aside for settle() to bin, and how many times
+	 * each was added.
+	 */
+	double[] pendingX = new double[16];
+	int[] pendingN = new int[16];
+
+	/**
+	 * The number of values set aside.
+	 */
+	int numPending;
+
+	/**
+	 * Creates an empty stripe.
+	 *
+	 * @param parent the bins this is a stripe of
+	 * @param owner the thread that will write to it, or null
+	 */
+	Stripe(StripedBinner parent, Thread owner)
+	{
+	    this.parent = parent;
+	    this.owner = owner;
+	    bins = new long[parent.numBins];
+	}
+
+	/**
+	 * Adds a value to this stripe.
+	 *
+	 * @param x The value to add.
+	 * @param n The number of times to add it.
+	 */
+	public void add(double x, int n)
+	{
+	    double offset = (x - parent.xMin) * parent.scale;
+	    if (offset >= 0.0 && offset < bins.length)
+		bins[(int) offset] += n;
+	    else if (parent.autoRange && !Double.isNaN(x) 
+		     && !Double.isInfinite(x))
+		setAside(x, n);
+	    else if (x < parent.xMin)
+		underflow += n;
+	    else
+		overflow += n;
+	}
+
+	/**
+	 * Keeps an out of range value for settle() to bin.
+	 *
+	 * @param x The value.
+	 * @param n The number of times it was added.
+	 */
+	private void setAside(double x, int n)
+	{
+	    if (numPending == pendingX.length) {
+		double[] xs = new double[2 * numPending];
+		int[] ns = new int[2 * numPending];
+		System.arraycopy(pendingX, 0, xs, 0, numPending);
+		System.arraycopy(pendingN, 0, ns, 0, numPending);
+		pendingX = xs;
+		pendingN = ns;
+	    }
+	    pendingX[numPending] = x;
+	    pendingN[numPending++] = n;
+	}
+    }
+}
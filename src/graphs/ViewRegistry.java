@@ -0,0 +1,138 @@
+package graphs;
+
+import java.util.Iterator;
+import java.util.Vector;
+import javax.swing.JComponent;
+
+/**
+ * This class keeps track of which views show which sources of data, so
+ * that when some of the data changes only the views showing it are
+ * repainted, instead of everything around them.  Each view registers
+ * the sources it depends on as a set of bits.  Changes are marked as
+ * they come in and the views are repainted once per frame by
+ * repaintDirty(), however many changes came in since the last one.
+ * <p>
+ * It is meant to be used on the event dispatching thread only.
+ */
+public class ViewRegistry
+{
+    /**
+     * The histogram of the current population.
+     */
+    public final static int HISTOGRAM = 1;
+
+    /**
+     * The reference energy series.
+     */
+    public final static int REF_ENERGY = 2;
+
+    /**
+     * The number of walkers series.
+     */
+    public final static int NUM_WALKERS = 4;
+
+    /**
+     * The running E0 estimate series.
+     */
+    public final static int E0_ESTIMATE = 8;
+
+    /**
+     * The Phi_0 estimate.
+     */
+    public final static int PHI0_ESTIMATE = 16;
+
+    /**
+     * The registered views.
+     */
+    private Vector<View> views = new Vector<View>();
+
+    /**
+     * The sources changed since the views were last repainted.
+     */
+    private int dirty;
+
+    /**
+     * Registers a view, replacing any earlier registration of it.
+     *
+     * @param c The view.
+     * @param sources The sources it shows, or'ed together.
+     */
+    public void register(JComponent c, int sources)
+    {
+	unregister(c);
+	views.add(new View(c, sources));
+    }
+
+    /**
+     * Forgets a view.  Does nothing if it is not registered.
+     *
+     * @param c The view.
+     */
+    public void unregister(JComponent c)
+    {
+	Iterator<View> i = views.iterator();
+	while (i.hasNext())
+	    if (i.next().component == c)
+		i.remove();
+    }
+
+    /**
+     * Marks sources as changed.
+     *
+     * @param sources The sources changed, or'ed together.
+     */
+    public void markDirty(int sources)
+    {
+	dirty |= sources;
+    }
+
+    /**
+     * Repaints every view showing a source changed since the last call.
+     *
+     * @return the number of views repainted
+     */
+    public int repaintDirty()
+    {
+	int n = 0;
+	if (dirty != 0) {
+	    Iterator<View> i = views.iterator();
+	    while (i.hasNext()) {
+		View v = i.next();
+		if ((v.sources & dirty) != 0 && v.component.isShowing()) {
+		    v.component.repaint();
+		    n++;
+		}
+	    }
+	    dirty = 0;
+	}
+	return n;
+    }
+
+    /**
+     * A registered view and the sources it shows.
+     */
+    private static class View
+    {
+	/**
+	 * The view.
+	 */
+	JComponent component;
+
+	/**
+	 * The sources it shows.
+	 */
+	int sources;
+
+	/**
+	 * Creates a registration.
+	 *
+	 * @param c The view.
+	 * @param sources The sources it shows.
+	 */
+	View(JComponent c, int sources)
+	{
+	    component = c;
+	    this.sources = sources;
+	}
+    }
+}
@@ -6,7 +6,8 @@ import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
 import javax.swing.event.*;
-import java.lang.ArithmeticException;
+import java.lang.RuntimeException;
+import java.lang.Runnable;
 import java.lang.NumberFormatException;
 import java.lang.Integer;
 import java.lang.Long;
@@ -15,6 +16,8 @@ import java.lang.Math;
 import java.lang.System;
 import java.util.Vector;
 import java.util.Iterator;
+import java.text.DecimalFormat;
+import javax.management.JMException;
 
 /**
  * This class implements a graphical user interface to a Diffusion
@@ -66,6 +69,30 @@ public class GUI extends JApplet implements ActionListener,
      */
     private final int DEFAULT_N_ITERATIONS = 1;
 
+    /**
+     * The millisecond delay between repaints while a simulation is
+     * running, for about 30 frames a second.
+     */
+    private final int FRAME_DELAY = 33;
+
+    /**
+     * The default number of frames per second targeted when running at
+     * a frame rate.
+     */
+    private final int DEFAULT_FRAME_RATE = 30;
+
+    /**
+     * The millisecond delay between repaints when running at maximum
+     * throughput.
+     */
+    private final int SLOW_FRAME_DELAY = 1000;
+
+    /**
+     * The least millisecond time between updates of the performance
+     * overlay, so the rates it shows are averaged over enough work.
+     */
+    private final int OVERLAY_INTERVAL = 500;
+
     /**
      * The default number of points to display on the number of walkers
      * and reference energy graphs.
@@ -144,6 +171,24 @@ public class GUI extends JApplet implements ActionListener,
      */
     private final String GAUSSIAN = "Gaussian Distribution";
 
+    /**
+     * The string representation of running a set number of iterations
+     * with a set delay, for use in the run mode combo box.
+     */
+    private final String PACED = "Paced";
+
+    /**
+     * The string representation of running as many iterations as fit
+     * in each frame, for use in the run mode combo box.
+     */
+    private final String FRAME_RATE = "Frame Rate";
+
+    /**
+     * The string representation of running at full speed and repainting
+     * only once in a while, for use in the run mode combo box.
+     */
+    private final String MAX_THROUGHPUT = "Max Speed";
+
     /**************************
      * GUI EDITABLE VARIABLES *
      *                        ***********************************
@@ -162,6 +207,11 @@ public class GUI extends JApplet implements ActionListener,
      */
     private int nIterations;
 
+    /**
+     * The number of frames per second targeted in the frame rate mode.
+     */
+    private int frameRate;
+
     /**
      * The number of simulation iterations to record e0 estimate.
      */
@@ -347,10 +397,70 @@ public class GUI extends JApplet implements ActionListener,
     private DMC simulation;
 
     /**
-     * The timer that fires simulation events so that the output 
-     * can be graphed.
+     * The timer that repaints the graphs while a simulation is running.
+     */
+    private Timer frameTimer;
+
+    /**
+     * The thread running the simulation.
+     */
+    private SimulationRunner runner;
+
+    /**
+     * Exposes the running simulation over JMX, or null when none is
+     * running.
+     */
+    private SimulationMonitor monitor;
+
+    /**
+     * Whether or not the simulation was last paused over JMX, which is
+     * the only pause that may be ended over JMX.
+     */
+    private boolean pausedOverJMX;
+
+    /**
+     * Hands snapshots of the histogram, the Phi_0 estimate and the new
+     * points of the data graphs from the simulation thread to the graphs.
+     */
+    private SnapshotExchange<Snapshot> exchange;
+
+    /**
+     * The graphs and the data each one shows, so that each frame only
+     * the graphs whose data changed are repainted.
+     */
+    private ViewRegistry views = new ViewRegistry();
+
+    /**
+     * Paints the GUI, keeping track of the time spent painting.
      */
-    private Timer simulationTimer;
+    private TimingRepaintManager repaintManager;
+
+    /**
+     * The repaint manager in place before ours, put back by destroy().
+     */
+    private RepaintManager previousRepaintManager;
+
+    /**
+     * Shows what the simulation achieves, over the graphs.
+     */
+    private PerformanceOverlay overlay;
+
+    /**
+     * The counters, time, bytes allocated and time spent painting when
+     * the performance overlay was last updated.
+     */
+    private EngineStats lastStats = new EngineStats();
+    private long lastNanoTime, lastAllocated, lastPaintNanos;
+
+    /**
+     * Publishes a snapshot, for handing to the simulation thread.
+     */
+    private Runnable publishTask = new Runnable() {
+	    public void run()
+	    {
+		publish();
+	    }
+	};
     
     /**
      * Whether or not the current simulation is paused.
@@ -362,6 +472,12 @@ public class GUI extends JApplet implements ActionListener,
      */
     private int iterations;
 
+    /**
+     * Whether the simulation is gathering the Phi_0 estimate, which it
+     * does once past the warmup.
+     */
+    private boolean phi0Gathering;
+
     /**
      * The cumulative reference energy.
      */
@@ -403,6 +519,11 @@ public class GUI extends JApplet implements ActionListener,
      */
     private Vector refEnergyGraphVector;
 
+    /**
+     * Contains the binned walkers for the histograms.
+     */
+    private HistogramData histogramData;
+
     /**
      * Contains the data for the Phi_0 Estimate graphs.
      */
@@ -661,6 +782,11 @@ public class GUI extends JApplet implements ActionListener,
      */
     private JTextField nIterationsTextField;
 
+    /**
+     * Text field to enter the frame rate targeted in the frame rate mode.
+     */
+    private JTextField frameRateTextField;
+
     /**
      * Text field to enter the x_0 parameter of the delta function
      * for walker initialization.
@@ -752,6 +878,17 @@ public class GUI extends JApplet implements ActionListener,
      * different graphs.
      */
     private JComboBox graphOptionsComboBox;
+
+    /**
+     * Combo Box to select how the simulation is run: paced, at a frame
+     * rate, or at maximum throughput.
+     */
+    private JComboBox<String> runModeComboBox;
+
+    /**
+     * Check box to show the performance overlay.
+     */
+    private JCheckBox showPerformanceCheckBox;
     
     // OTHER /////
 
@@ -791,6 +928,14 @@ public class GUI extends JApplet implements ActionListener,
     public void start() 
     { 
 	isPaused = true;
+	if (runner != null)
+	    endRunner();
+	runner = new SimulationRunner();
+	frameTimer = new Timer(FRAME_DELAY,this);
+	if (previousRepaintManager == null)
+	    previousRepaintManager = RepaintManager.currentManager(this);
+	repaintManager = new TimingRepaintManager();
+	RepaintManager.setCurrentManager(repaintManager);
 	setupGUI();
 	assignDefaultValues();	
 	resetSimulation();
@@ -806,9 +951,17 @@ public class GUI extends JApplet implements ActionListener,
     private void resetSimulation()
     {
 	isPaused = true;
+	pausedOverJMX = false;
+	runner.pause();
+	frameTimer.stop();
+	if (monitor != null) {
+	    monitor.unregister();
+	    monitor = null;
+	}
 	setupBlankSimulation();
 
 	iterations = 0;
+	phi0Gathering = false;
 	cumulativeEnergy = 0.0;
 
 	histogramGraphVector = new Vector();
@@ -821,7 +974,15 @@ public class GUI extends JApplet implements ActionListener,
 				       numWalkersMaxPoints);
 	refEnergyData = new GraphData(0,1,0,1,refEnergyMaxPoints);
 	e0EstimateData = new GraphData(0,1,0,1,-1);
-	phi0EstimateData = new Phi0EstimateData(histogramXMin,histogramXMax,200);
+	histogramData = new HistogramData(histogramXMin,histogramXMax,numBins);
+	phi0EstimateData = new Phi0EstimateData(histogramXMin,histogramXMax);
+	exchange = new SnapshotExchange<Snapshot>() {
+		protected Snapshot create()
+		{
+		    return new Snapshot();
+		}
+	    };
+	changeSimulation(publishTask);
 	
 	resetTimer();
 
@@ -885,6 +1046,8 @@ public class GUI extends JApplet implements ActionListener,
 	resetTextField(refEnergyTextField);
 	resetTextField(delayTextField);
 	resetTextField(nIterationsTextField);
+	resetTextField(frameRateTextField);
+	runModeComboBox.setSelectedItem(FRAME_RATE);
 	resetTextField(initDeltaFncX0TextField);
 	resetTextField(initUniformATextField);
 	resetTextField(initUniformBTextField);
@@ -918,14 +1081,176 @@ public class GUI extends JApplet implements ActionListener,
     }
 
     /**
-     * This function resets the timer with the delay given by the
-     * GUI editable variable.  Should be called at the beginning of a
-     * simulation, and whenever the value of delay changes.
+     * This function gives the simulation thread the run mode, delay,
+     * number of iterations per batch and frame rate given by the GUI
+     * editable variables, and sets how often the graphs are repainted to
+     * match.  Should be called at the beginning of a simulation, and
+     * whenever any of them changes.
      */
     private void resetTimer() 
     {
-	simulationTimer = new Timer(delay,this);
-	simulationTimer.setInitialDelay(0);
+	String s = (String) runModeComboBox.getSelectedItem();
+	runner.setDelay(delay);
+	runner.setBatch(nIterations);
+	if (frameRate > 0)
+	    runner.setFrameRate(frameRate);
+	if (s == FRAME_RATE) {
+	    runner.setMode(Runner.FRAME_RATE);
+	    frameTimer.setDelay(1000 / frameRate);
+	}
+	else if (s == MAX_THROUGHPUT) {
+	    runner.setMode(Runner.MAX_THROUGHPUT);
+	    frameTimer.setDelay(SLOW_FRAME_DELAY);
+	}
+	else {
+	    runner.setMode(Runner.PACED);
+	    frameTimer.setDelay(FRAME_DELAY);
+	}
+	delayTextField.setEnabled(s == PACED);
+	nIterationsTextField.setEnabled(s == PACED);
+	frameRateTextField.setEnabled(s == FRAME_RATE);
+    }
+
+    /**
+     * Copies what the graphs show into the back snapshot and publishes it,
+     * unless the last one published has not been taken yet (the new
+     * points then wait in the back snapshot for the next try).  Must be
+     * called on the simulation thread, or while it is parked.
+     */
+    private void publish()
+    {
+	if (!exchange.canPublish())
+	    return;
+	Snapshot s = exchange.getBack();
+	s.histogram.copyFrom(histogramData);
+	if (s.phi0Binned != phi0EstimateData.numBinned) {
+	    s.phi0.copyFrom(phi0EstimateData);
+	    s.phi0Binned = phi0EstimateData.numBinned;
+	}
+	s.iterations = iterations;
+	s.tau = simulation.tau;
+	s.refEnergy = simulation.refEnergy;
+	s.numWalkers = simulation.walkers.size();
+	s.stats.copyFrom(simulation.stats);
+	s.nanoTime = System.nanoTime();
+	s.allocatedBytes = EngineStats.allocatedBytes(runner.getThreadId());
+	exchange.publish();
+	exchange.getBack().clearPoints();
+    }
+
+    /**
+     * Takes the latest snapshot, if a new one was published, adding its
+     * points to the data graphs and pointing the histograms at it, and
+     * marks the data that changed for repainting.  Must be called on the
+     * event dispatching thread.
+     *
+     * @return whether or not there was a new snapshot
+     */
+    private boolean takeSnapshot()
+    {
+	// take() gives the old front snapshot back to the simulation thread,
+	// which may then write to it, so what is needed of it is read first:
+	Snapshot last = exchange.getFront();
+	long lastBinned = last == null ? -1 : last.phi0Binned;
+	Snapshot s = exchange.take();
+	if (s == null)
+	    return false;
+	int changed = ViewRegistry.HISTOGRAM;
+	if (s.numPoints > 0)
+	    changed |= ViewRegistry.REF_ENERGY | ViewRegistry.NUM_WALKERS;
+	if (last == null || lastBinned != s.phi0Binned)
+	    changed |= ViewRegistry.PHI0_ESTIMATE;
+	for (int k = 0; k < s.numPoints; k++) {
+	    refEnergyData.add(s.tauPoints[k], s.refEnergyPoints[k]);
+	    numWalkersData.add(s.tauPoints[k], s.numWalkersPoints[k]);
+	    if (!Double.isNaN(s.e0Points[k])) {
+		e0EstimateData.add(s.tauPoints[k], s.e0Points[k]);
+		changed |= ViewRegistry.E0_ESTIMATE;
+	    }
+	}
+	views.markDirty(changed);
+	if (overlay.isShowing())
+	    updateOverlay(s);
+	Iterator i = histogramGraphVector.iterator();
+	while (i.hasNext())
+	    ((Histogram) i.next()).theData = s.histogram;
+	i = phi0EstimateGraphVector.iterator();
+	while (i.hasNext())
+	    ((Phi0Histogram) i.next()).theData = s.phi0;
+	return true;
+    }
+
+    /**
+     * Updates the performance overlay with the rates since it was last
+     * updated, unless that was too recent.
+     *
+     * @param s The snapshot taken last.
+     */
+    private void updateOverlay(Snapshot s)
+    {
+	double seconds = (s.nanoTime - lastNanoTime) / 1.0e9;
+	if (seconds * 1000 < OVERLAY_INTERVAL && seconds >= 0.0)
+	    return;
+	// After a reset the counters start over, and the rates with them:
+	if (lastNanoTime != 0 && seconds > 0.0
+	    && s.stats.iterations >= lastStats.iterations) {
+	    DecimalFormat sci = new DecimalFormat("0.00E0");
+	    DecimalFormat whole = new DecimalFormat("0");
+	    double nanos = seconds * 1.0e9;
+	    String[] lines = new String[6];
+	    lines[0] = "Walker steps/s: " 
+		+ sci.format((s.stats.walkerSteps - lastStats.walkerSteps)
+			     / seconds);
+	    lines[1] = "Iterations/s: " 
+		+ whole.format((s.stats.iterations - lastStats.iterations) 
+			       / seconds);
+	    lines[2] = "Walk " 
+		+ whole.format(100 * (s.stats.walkNanos - lastStats.walkNanos)
+			       / nanos)
+		+ "%  Branch " 
+		+ whole.format(100 * (s.stats.branchNanos 
+				      - lastStats.branchNanos) / nanos)
+		+ "%  Accum. " 
+		+ whole.format(100 * (s.stats.accumulateNanos
+				      - lastStats.accumulateNanos) / nanos)
+		+ "%";
+	    lines[3] = "Paint " 
+		+ whole.format(100 * (repaintManager.paintNanos 
+				      - lastPaintNanos) / nanos)
+		+ "% of the event thread";
+	    if (s.allocatedBytes >= 0 && lastAllocated >= 0)
+		lines[4] = "Allocation: " 
+		    + whole.format((s.allocatedBytes - lastAllocated) 
+				   / seconds / (1 << 20)) + " MB/s";
+	    else
+		lines[4] = "Allocation: unknown";
+	    lines[5] = "Population: " + s.numWalkers + " walkers, " 
+		+ whole.format(EngineStats.populationBytes(s.numWalkers) 
+			       / 1024.0) + " KB";
+	    overlay.setLines(lines);
+	}
+	lastStats.copyFrom(s.stats);
+	lastNanoTime = s.nanoTime;
+	lastAllocated = s.allocatedBytes;
+	lastPaintNanos = repaintManager.paintNanos;
+    }
+
+    /**
+     * Changes the simulation on its own thread between iterations, and
+     * if it is paused, shows the change right away.  The task should end
+     * by publishing a snapshot.
+     *
+     * @param task What to do to the simulation.
+     */
+    private void changeSimulation(Runnable task)
+    {
+	// While paused the task runs right here, and publishing it needs
+	// the last snapshot taken:
+	if (isPaused)
+	    takeSnapshot();
+	runner.invoke(task);
+	if (isPaused)
+	    takeSnapshot();
     }
 
     /**
@@ -955,19 +1280,54 @@ public class GUI extends JApplet implements ActionListener,
     }
 
     /**
-     * Necessary to be an applet - does nothing.
+     * Pauses the simulation when the applet is stopped (its page left,
+     * say), as the pause button does.
      */
     public void stop() 
     { 
-	// Nothing to clean up.
+	if (runner == null)
+	    return;
+	isPaused = true;
+	runner.pause();
+	frameTimer.stop();
+	pausedOverJMX = false;
+	if (pauseButton.isEnabled()) {
+	    pauseButton.setEnabled(false);
+	    continueButton.setEnabled(true);
+	    resetButton.setEnabled(true);
+	}
     }
 
     /**
-     * Necessary to be an applet - does nothing.
+     * Ends the simulation thread, takes the simulation's JMX bean off
+     * the platform MBean server, and puts back the repaint manager that
+     * was in place before start() when the applet is unloaded.
      */
     public void destroy() 
     { 
-	// Nothing to clean up.
+	stop();
+	if (monitor != null) {
+	    monitor.unregister();
+	    monitor = null;
+	}
+	if (runner != null)
+	    endRunner();
+	if (previousRepaintManager != null) {
+	    RepaintManager.setCurrentManager(previousRepaintManager);
+	    previousRepaintManager = null;
+	}
+    }
+
+    /**
+     * Stops the simulation thread for good and waits for it to end, so
+     * restarting or reloading the applet does not leave it running.
+     */
+    private void endRunner()
+    {
+	frameTimer.stop();
+	runner.stop();
+	runner.join();
+	runner = null;
     }
     
     /**
@@ -1017,6 +1377,13 @@ public class GUI extends JApplet implements ActionListener,
 	tp.add("Graphs",setupGraphsPanel());
 	tp.add("Settings",setupSettingsPanel());
 	getContentPane().add(tp);
+
+	// The performance overlay sits in the glass pane, over everything:
+	JPanel glassPane = new JPanel(null);
+	glassPane.setOpaque(false);
+	overlay = new PerformanceOverlay();
+	glassPane.add(overlay);
+	setGlassPane(glassPane);
     }
     
     /**
@@ -1148,12 +1515,17 @@ public class GUI extends JApplet implements ActionListener,
 	JPanel bottomPanel = new JPanel(new BorderLayout());
 	bottomPanel.setPreferredSize(new Dimension(590,100));
 	bottomPanel.add(setupDisplayOptionsPanel(420), BorderLayout.WEST);
+	bottomPanel.add(setupRunModePanel(170), BorderLayout.EAST);
 	JPanel bottomBottomPanel = new JPanel();
 	bottomBottomPanel.setPreferredSize(new Dimension(590,35));
 	useDefaultsButton = new JButton("Use Defaults");
 	useDefaultsButton.setToolTipText("Resets all modifiable values to their defaults.");
 	useDefaultsButton.addActionListener(this);
 	bottomBottomPanel.add(useDefaultsButton);
+	showPerformanceCheckBox = new JCheckBox("Show Performance");
+	showPerformanceCheckBox.setToolTipText("Shows what the simulation achieves: walker-steps and iterations per second, where the time goes, the allocation rate and the memory taken by the population.");
+	showPerformanceCheckBox.addActionListener(this);
+	bottomBottomPanel.add(showPerformanceCheckBox);
 	bottomPanel.add(bottomBottomPanel, BorderLayout.SOUTH);
 	settingsPanel.add(bottomPanel, BorderLayout.SOUTH);
 	
@@ -1187,6 +1559,31 @@ public class GUI extends JApplet implements ActionListener,
 	return displayOptionsPanel;
     }
 
+    /**
+     * This method sets up the panel seen as "Run Mode" under the
+     * "Settings" tab.
+     *
+     * @param width The preferred integer width of the panel.
+     */
+    private JPanel setupRunModePanel(int width)
+    {
+	JPanel runModePanel = new JPanel();
+	runModePanel.setPreferredSize(new Dimension(width,55));
+	runModePanel.setBorder 
+	    (BorderFactory.createTitledBorder("Run Mode"));
+	String[] runModeChoices = { PACED, FRAME_RATE, MAX_THROUGHPUT };
+	runModeComboBox = new JComboBox<String>(runModeChoices);
+	runModeComboBox.setToolTipText("Selects how the simulation is run: a set number of iterations every so often, as many as fit in each frame, or as many as possible.");
+	runModeComboBox.addActionListener(this);
+	runModePanel.add(runModeComboBox);
+	frameRateTextField = new JTextField("",3);
+	frameRateTextField.setToolTipText("Edits the number of frames per second targeted when running at a frame rate.");
+	frameRateTextField.addFocusListener(this);
+	runModePanel.add(frameRateTextField);
+
+	return runModePanel;
+    }
+
     /**
      * This method sets up the panel seen as "Graph Options" under
      * the "Settings" tab.
@@ -1670,12 +2067,11 @@ public class GUI extends JApplet implements ActionListener,
     
     /**
      * This method handles the action events thrown by various GUI members,
-     * including the simulation timer, all of the buttons (button buttons,
+     * including the frame timer, all of the buttons (button buttons,
      * check boxes, and radio buttons), and the combo boxes.
      * <p>
-     * It is important that the simulationTimer is the first one in the list
-     * of checked for events, as it needs to run quickly to finish before
-     * the next simulation event is thrown.
+     * It is important that the frameTimer is the first one in the list
+     * of checked for events, as it fires many times a second.
      * <p>
      * This should be modularized into multiple classes in the future.
      * Although I use good naming practices and the individual parts of 
@@ -1687,35 +2083,13 @@ public class GUI extends JApplet implements ActionListener,
     {
 	Object source = e.getSource();
 
-	if (source == simulationTimer) {
-	    try {
-		for (int i = 0; i < nIterations; i++) {
-		    simulation.Iterate();
-		    iterations++;
-		    cumulativeEnergy += simulation.refEnergy;
-		    if (iterations >= warmup)
-			phi0EstimateData.addData(simulation.walkers);
-		}
-	    }
-	    catch (ArithmeticException ae) {
-		simulationTimer.stop();
-		startButton.setEnabled(false);
-		pauseButton.setEnabled(false);
-		continueButton.setEnabled(false);
-		resetButton.setEnabled(true);
-	    }
-	    refEnergyData.addCoordinate(new Coordinate(simulation.tau,
-						       simulation.refEnergy));
-	    numWalkersData.addCoordinate(new Coordinate(simulation.tau,
-							simulation.walkers.size()));
-	    if (iterations <= e0Iterations)
-		    e0EstimateData.addCoordinate(new Coordinate(simulation.tau,
-								cumulativeEnergy/iterations));
-	    repaint();
+	if (source == frameTimer) {
+	    // Only the graphs whose data changed are repainted:
+	    if (takeSnapshot())
+		views.repaintDirty();
 	    return;
 	}
 	if (source == startButton) {
-	    isPaused = false;
 	    int mode = DMC.INIT_DELTA_FNC;
 	    double p1 = 0.0,p2 = 0.0;
 	    String s = ((String) walkerInitComboBox.getSelectedItem());
@@ -1739,30 +2113,31 @@ public class GUI extends JApplet implements ActionListener,
 	    else
 		simulation = new DMC(numWalkers, refEnergy, refEnergyConstant,
 				     dTau, alpha, seed, mode, p1, p2);
-	    Iterator i = histogramGraphVector.iterator();
-	    while (i.hasNext()) {
-		Histogram h = (Histogram) i.next();
-		h.theData = simulation.walkers;
+	    histogramData.fill(simulation.walkers);
+	    simulation.addAccumulator(histogramData);
+	    phi0Gathering = false;
+	    changeSimulation(publishTask);
+	    monitor = new SimulationMonitor(simulation, runner, warmup,
+					    new MonitorOwner());
+	    try {
+		monitor.register();
 	    }
-	    simulationTimer.start();
+	    catch (JMException jme) {
+		// The simulation runs just the same without it.
+	    }
+	    isPaused = false;
+	    runner.resume();
+	    frameTimer.start();
 	    startButton.setEnabled(false);
 	    pauseButton.setEnabled(true);
 	    componentsSetEditable(false);
 	}
 	else if (source == pauseButton) {
-	    isPaused = true;
-	    simulationTimer.stop();
-	    pauseButton.setEnabled(false);
-	    continueButton.setEnabled(true);
-	    resetButton.setEnabled(true);
-	}
-	else if (source == continueButton) {
-	    isPaused = false;
-	    simulationTimer.restart();
-	    continueButton.setEnabled(false);
-	    resetButton.setEnabled(false);
-	    pauseButton.setEnabled(true);
+	    pauseSimulation();
+	    pausedOverJMX = false;
 	}
+	else if (source == continueButton)
+	    continueSimulation();
 	else if (source == resetButton) {
 	    resetSimulation();
 	    startButton.setEnabled(true);
@@ -1890,6 +2265,15 @@ public class GUI extends JApplet implements ActionListener,
 	    changeCardPanel(potentialChoiceOptionsPanel,((JComboBox) source));
 	else if (source == graphOptionsComboBox)
 	    changeCardPanel(graphOptionsChoiceOptionsPanel,((JComboBox) source));
+	else if (source == runModeComboBox)
+	    resetTimer();
+	else if (source == showPerformanceCheckBox) {
+	    Dimension d = overlay.getPreferredSize();
+	    overlay.setBounds(getWidth() - d.width - 10, 30, 
+			      d.width, d.height);
+	    lastNanoTime = 0;
+	    getGlassPane().setVisible(showPerformanceCheckBox.isSelected());
+	}
 	else if (source == topLittleGraphComboBox)
 	    changeGraphs(topLittleGraph, (String) (((JComboBox) source).getSelectedItem()),
 			 185, 136);
@@ -1973,6 +2357,17 @@ public class GUI extends JApplet implements ActionListener,
 	    }
 	    if (!isPaused)
 		pause();
+	    // A warmup raised past the iterations run stops the gathering
+	    // until the run gets there again:
+	    runner.invoke(new Runnable() {
+		    public void run()
+		    {
+			if (phi0Gathering && warmup > iterations) {
+			    simulation.removeAccumulator(phi0EstimateData);
+			    phi0Gathering = false;
+			}
+		    }
+		});
 	    resetTimer();
 	}
 	else if (source == delayTextField) {
@@ -1997,6 +2392,19 @@ public class GUI extends JApplet implements ActionListener,
 	    }
 	    if (!isPaused)
 		pause();
+	    resetTimer();
+	}
+	else if (source == frameRateTextField) {
+	    try {
+		frameRate = Integer.parseInt(frameRateTextField.getText());
+		if (frameRate <= 0)
+		    throw new NumberFormatException();
+	    }
+	    catch (NumberFormatException nfe) {
+		frameRateTextField.setText(Integer.toString(DEFAULT_FRAME_RATE));
+		frameRate = DEFAULT_FRAME_RATE;
+	    }
+	    resetTimer();
 	}
 	else if (source == dTauTextField) {
 	    try {
@@ -2131,24 +2539,54 @@ public class GUI extends JApplet implements ActionListener,
      * This method updates all of the visible histograms, including changing
      * the number of bins, xMin, xMax, the color, whether or not to normalize,
      * the mode, as well as whether or not to graph SHO's Phi_0 function.
+     * <p>
+     * If the binning changed, the current walkers are rebinned right away
+     * so that a paused simulation shows it too.  The Phi_0 estimate graphs
+     * are rebinned from their fine base histogram the same way.
      */
     private void updateHistograms() 
     {
 	if (histogramGraphVector != null) {
+	    if (histogramData.numBins != numBins 
+		|| histogramData.xMin != histogramXMin
+		|| histogramData.xMax != histogramXMax) {
+		changeSimulation(new Runnable() {
+			public void run()
+			{
+			    histogramData.setRange(histogramXMin,histogramXMax,
+						   numBins);
+			    histogramData.fill(simulation.walkers);
+			    publish();
+			}
+		    });
+	    }
 	    Iterator i = histogramGraphVector.iterator();
 	    while (i.hasNext()) {
 		Histogram h = (Histogram) i.next();
-		h.numBins = numBins;
-		h.xMin = histogramXMin;
-		h.xMax = histogramXMax;
 		h.mode = histogramDisplayMode;
 		h.color = histogramColor;
 		h.normalize = normalizeHistogram;
 	    }
+	    i = phi0EstimateGraphVector.iterator();
+	    while (i.hasNext())
+		setPhi0Binning((Phi0Histogram) i.next());
 	    repaint();
 	}
     }
 
+    /**
+     * This method sets a Phi_0 estimate graph to show the same bins as
+     * the histograms.
+     *
+     * @param h The Phi_0 estimate graph.
+     */
+    private void setPhi0Binning(Phi0Histogram h)
+    {
+	h.numBins = numBins;
+	h.xMin = histogramXMin;
+	h.xMax = histogramXMax;
+    }
+
     /**
      * This method updates all of the visible phi0Estimate graphs.
      */
@@ -2179,7 +2617,7 @@ public class GUI extends JApplet implements ActionListener,
 		DataGraph dg = (DataGraph) i.next();
 		dg.mode = numWalkersDisplayMode;
 		dg.color = numWalkersColor;
-		dg.theData.maxPoints = numWalkersMaxPoints;
+		dg.theData.setMaxPoints(numWalkersMaxPoints);
 	    }
 	    repaint();
 	}
@@ -2218,7 +2656,7 @@ public class GUI extends JApplet implements ActionListener,
 		DataGraph dg = (DataGraph) i.next();
 		dg.mode = refEnergyDisplayMode;
 		dg.color = refEnergyColor;
-		dg.theData.maxPoints = refEnergyMaxPoints;
+		dg.theData.setMaxPoints(refEnergyMaxPoints);
 		dg.functionList.clear();
 		if (shoGraphEnergy)
 		    dg.functionList.add(new SHOEnergyFunction(shoEnergyColor));
@@ -2252,13 +2690,15 @@ public class GUI extends JApplet implements ActionListener,
 	refEnergyGraphVector.remove(gp.content);
 	e0EstimateGraphVector.remove(gp.content);
 	phi0EstimateGraphVector.remove(gp.content);
+	views.unregister(gp.content);
 
+	// The histograms show the snapshot taken last:
+	Snapshot shown = exchange.getFront();
 	if (graph == HISTOGRAM) {
-	    Histogram h = new Histogram(width,height,histogramXMin,
-					histogramXMax,numBins);
-	    h.theData = simulation.walkers;
+	    Histogram h = new Histogram(width,height,shown.histogram);
 	    h.mode = histogramDisplayMode;
 	    histogramGraphVector.add(h);
+	    views.register(h, ViewRegistry.HISTOGRAM);
 	    h.color = histogramColor;
 	    h.normalize = normalizeHistogram;
 	    gp.setContent(h);
@@ -2271,6 +2711,7 @@ public class GUI extends JApplet implements ActionListener,
 	    g.mode = numWalkersDisplayMode;
 	    g.color = numWalkersColor;
 	    numWalkersGraphVector.add(g);
+	    views.register(g, ViewRegistry.NUM_WALKERS);
 	    gp.setContent(g);
 	    gp.setBorder(BorderFactory.createTitledBorder("Number of Walkers"));
 	}
@@ -2281,6 +2722,7 @@ public class GUI extends JApplet implements ActionListener,
 	    g.mode = refEnergyDisplayMode;
 	    g.color = refEnergyColor;
 	    refEnergyGraphVector.add(g);
+	    views.register(g, ViewRegistry.REF_ENERGY);
 	    if (shoGraphEnergy)
 		g.functionList.add(new SHOEnergyFunction(shoEnergyColor));
 	    gp.setContent(g);
@@ -2293,16 +2735,19 @@ public class GUI extends JApplet implements ActionListener,
 	    g.mode = e0EstimateDisplayMode;
 	    g.color = e0EstimateColor;
 	    e0EstimateGraphVector.add(g);
+	    views.register(g, ViewRegistry.E0_ESTIMATE);
 	    if (shoGraphEnergy)
 		g.functionList.add(new SHOEnergyFunction(shoEnergyColor));
 	    gp.setContent(g);
 	    gp.setBorder(BorderFactory.createTitledBorder("E0 Estimate"));	    
 	}
 	else if (graph == PHI0ESTIMATE) {
-	    Phi0Histogram h = new Phi0Histogram(width,height,phi0EstimateData);
+	    Phi0Histogram h = new Phi0Histogram(width,height,shown.phi0);
 	    phi0EstimateGraphVector.add(h);
+	    views.register(h, ViewRegistry.PHI0_ESTIMATE);
 	    h.setToolTipText("PHI0 Estimate Graph");
 	    h.color = phi0EstimateColor;
+	    setPhi0Binning(h);
 	    if (shoGraphPhi)
 		h.functionList.add(new SHOPhiFunction(shoPhiColor));
 	    gp.setContent(h);
@@ -2326,6 +2771,222 @@ public class GUI extends JApplet implements ActionListener,
 	String s = (String) cb.getSelectedItem();
 	l.show(p,s);
     }
+
+    /**
+     * Pauses the simulation, as the pause button does.
+     */
+    private void pauseSimulation()
+    {
+	isPaused = true;
+	runner.pause();
+	frameTimer.stop();
+	changeSimulation(publishTask);
+	repaint();
+	pauseButton.setEnabled(false);
+	continueButton.setEnabled(true);
+	resetButton.setEnabled(true);
+    }
+
+    /**
+     * Continues the simulation, as the continue button does.
+     */
+    private void continueSimulation()
+    {
+	isPaused = false;
+	pausedOverJMX = false;
+	runner.resume();
+	frameTimer.restart();
+	continueButton.setEnabled(false);
+	resetButton.setEnabled(false);
+	pauseButton.setEnabled(true);
+    }
+
+    /**
+     * This class carries out the pauses and resumes asked for over JMX
+     * on the event dispatching thread, as the buttons would, so they
+     * never race the GUI's own changes to the simulation.  A pause is
+     * only done if the pause button could be pressed, and a resume only
+     * if the last pause was one over JMX and the continue button could
+     * be pressed (so never after the run failed or was reset).
+     */
+    private class MonitorOwner implements SimulationMonitor.Owner
+    {
+	/**
+	 * Pauses the simulation if it is running.
+	 */
+	public void requestPause()
+	{
+	    SwingUtilities.invokeLater(new Runnable() {
+		    public void run()
+		    {
+			if (!pauseButton.isEnabled())
+			    return;
+			pauseSimulation();
+			pausedOverJMX = true;
+		    }
+		});
+	}
+
+	/**
+	 * Continues the simulation if it was paused over JMX.
+	 */
+	public void requestResume()
+	{
+	    SwingUtilities.invokeLater(new Runnable() {
+		    public void run()
+		    {
+			if (pausedOverJMX && continueButton.isEnabled())
+			    continueSimulation();
+		    }
+		});
+	}
+    }
+
+    /**
+     * This class runs the simulation on its own thread.  Each iteration
+     * does what the simulation timer used to: it starts gathering the
+     * Phi_0 estimate once the warmup is over and keeps the running E0
+     * estimate.  Paced, a point is added to the data graphs every
+     * nIterations iterations, as the timer did; otherwise every iteration
+     * of the E0 estimate is a point, and after that each batch adds its
+     * lowest and highest points.  Each batch publishes the points to the
+     * graphs.
+     */
+    private class SimulationRunner extends Runner
+    {
+	/**
+	 * The number of iterations since the last point, when paced.
+	 */
+	private int sincePoint;
+
+	/**
+	 * The number of iterations of the batch whose extremes are being
+	 * kept, when not paced.
+	 */
+	private int batchCount;
+
+	/**
+	 * The simulation time, reference energy and number of walkers of
+	 * the iterations of the batch with the lowest and highest reference
+	 * energy.
+	 */
+	private double lowTau, lowE, highTau, highE;
+	private int lowN, highN;
+
+	/**
+	 * Creates the runner, paused.
+	 */
+	public SimulationRunner()
+	{
+	    super("DMC Simulation");
+	}
+
+	/**
+	 * Runs one iteration of the simulation.
+	 */
+	protected void iterate()
+	{
+	    // The Phi_0 estimate is gathered by the simulation itself
+	    // from the first iteration past the warmup on:
+	    if (!phi0Gathering && iterations + 1 >= Math.max(warmup, 1)) {
+		simulation.addAccumulator(phi0EstimateData);
+		phi0Gathering = true;
+	    }
+	    simulation.Iterate();
+	    iterations++;
+	    cumulativeEnergy += simulation.refEnergy;
+	    if (getMode() == Runner.PACED) {
+		// A point every nIterations iterations, as the simulation
+		// timer used to add:
+		if (++sincePoint >= nIterations) {
+		    sincePoint = 0;
+		    addPoint();
+		}
+	    }
+	    else if (iterations <= e0Iterations)
+		// The E0 estimate only has so many points, so each counts:
+		addPoint();
+	    else {
+		double e = simulation.refEnergy;
+		if (batchCount == 0 || e < lowE) {
+		    lowTau = simulation.tau;
+		    lowE = e;
+		    lowN = simulation.walkers.size();
+		}
+		if (batchCount == 0 || e > highE) {
+		    highTau = simulation.tau;
+		    highE = e;
+		    highN = simulation.walkers.size();
+		}
+		batchCount++;
+	    }
+	    if (monitor != null)
+		monitor.iterationDone();
+	}
+
+	/**
+	 * Adds the present state of the simulation as a point for the data
+	 * graphs to the back snapshot.
+	 */
+	private void addPoint()
+	{
+	    double e0 = Double.NaN;
+	    if (iterations <= e0Iterations)
+		e0 = cumulativeEnergy/iterations;
+	    exchange.getBack().addPoint(simulation.tau, simulation.refEnergy,
+					simulation.walkers.size(), e0);
+	}
+
+	/**
+	 * Adds the iterations of the batch with the lowest and highest
+	 * reference energy as points, in order, so batches of any length
+	 * add at most two points but still show every swing, then publishes
+	 * the back snapshot if the graphs are ready for another.
+	 */
+	protected void endBatch()
+	{
+	    if (batchCount > 0) {
+		Snapshot s = exchange.getBack();
+		if (lowTau == highTau)
+		    s.addPoint(lowTau, lowE, lowN, Double.NaN);
+		else if (lowTau < highTau) {
+		    s.addPoint(lowTau, lowE, lowN, Double.NaN);
+		    s.addPoint(highTau, highE, highN, Double.NaN);
+		}
+		else {
+		    s.addPoint(highTau, highE, highN, Double.NaN);
+		    s.addPoint(lowTau, lowE, lowN, Double.NaN);
+		}
+		batchCount = 0;
+	    }
+	    publish();
+	}
+
+	/**
+	 * Stops the simulation for good when it fails (the population
+	 * died out or exploded), leaving only the reset button.
+	 *
+	 * @param e The exception thrown.
+	 */
+	protected void failed(RuntimeException e)
+	{
+	    SwingUtilities.invokeLater(new Runnable() {
+		    public void run()
+		    {
+			isPaused = true;
+			pausedOverJMX = false;
+			runner.pause();
+			frameTimer.stop();
+			changeSimulation(publishTask);
+			startButton.setEnabled(false);
+			pauseButton.setEnabled(false);
+			continueButton.setEnabled(false);
+			resetButton.setEnabled(true);
+			repaint();
+		    }
+		});
+	}
+    }
 }
 
 /*****************
@@ -2461,3 +3122,207 @@ class SHOEnergyFunction extends Function
 	return 0.5;
     }
 }
+
+/**
+ * This class paints the GUI like the usual repaint manager, keeping track
+ * of the total time spent painting.
+ */
+class TimingRepaintManager extends RepaintManager
+{
+    /**
+     * The nanoseconds spent painting so far.
+     */
+    public long paintNanos;
+
+    /**
+     * Paints everything that needs it, timing it.
+     */
+    public void paintDirtyRegions()
+    {
+	long t0 = System.nanoTime();
+	super.paintDirtyRegions();
+	paintNanos += System.nanoTime() - t0;
+    }
+}
+
+/**
+ * This class shows a few lines of text in a translucent box, to be laid
+ * over the graphs.
+ */
+class PerformanceOverlay extends JComponent
+{
+    /**
+     * The version of the serialized form.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The lines to show.
+     */
+    private String[] lines = { "Waiting for the simulation..." };
+
+    /**
+     * Creates an overlay big enough for the performance figures.
+     */
+    public PerformanceOverlay()
+    {
+	setPreferredSize(new Dimension(260,100));
+	setFont(new Font("SansSerif", Font.PLAIN, 11));
+    }
+
+    /**
+     * Changes the lines shown.
+     *
+     * @param lines The new lines.
+     */
+    public void setLines(String[] lines)
+    {
+	this.lines = lines;
+	repaint();
+    }
+
+    /**
+     * Draws the box and the lines.
+     *
+     * @param g The graphics element to draw with.
+     */
+    public void paintComponent(Graphics g)
+    {
+	g.setColor(new Color(255,255,224,220));
+	g.fillRect(0,0,getWidth(),getHeight());
+	g.setColor(Color.gray);
+	g.drawRect(0,0,getWidth()-1,getHeight()-1);
+	g.setColor(Color.black);
+	FontMetrics fm = g.getFontMetrics();
+	for (int i = 0; i < lines.length; i++)
+	    g.drawString(lines[i], 6, 4 + (i + 1) * fm.getHeight());
+    }
+}
+
+/**
+ * This class holds what the graphs show of a simulation at one point:
+ * copies of the histogram and of the Phi_0 estimate, the state of the
+ * population, and the points for the data graphs added since the last
+ * snapshot was taken.  The simulation thread fills one while the graphs
+ * show another; see SnapshotExchange.
+ */
+class Snapshot
+{
+    /**
+     * A copy of the histogram of the population.
+     */
+    public HistogramData histogram = new HistogramData(0.0,1.0,1);
+
+    /**
+     * A copy of the Phi_0 estimate.
+     */
+    public StripedBinner phi0 = new StripedBinner(0.0,1.0,1);
+
+    /**
+     * The number of populations binned into the Phi_0 estimate when it
+     * was copied, so it is only copied again when it has changed.
+     */
+    public long phi0Binned = -1;
+
+    /**
+     * The number of iterations done.
+     */
+    public long iterations;
+
+    /**
+     * The simulation time, reference energy and number of walkers.
+     */
+    public double tau, refEnergy;
+    public int numWalkers;
+
+    /**
+     * The simulation's counters of work done and time taken, the time
+     * they were copied, and the bytes the simulation thread had
+     * allocated then (-1 if not known).
+     */
+    public EngineStats stats = new EngineStats();
+    public long nanoTime;
+    public long allocatedBytes = -1;
+
+    /**
+     * The points for the data graphs: the simulation time of each, the
+     * reference energy, the number of walkers, and the running E0
+     * estimate (NaN when there is none).
+     */
+    public double[] tauPoints = new double[16];
+    public double[] refEnergyPoints = new double[16];
+    public double[] numWalkersPoints = new double[16];
+    public double[] e0Points = new double[16];
+
+    /**
+     * The number of points.
+     */
+    public int numPoints;
+
+    /**
+     * The most points kept until they are taken.  Past that every other
+     * point is dropped, so a snapshot the graphs fall behind on stays
+     * the same size and still spans the whole time.
+     */
+    public final static int MAX_POINTS = 4096;
+
+    /**
+     * Adds a point for the data graphs.
+     *
+     * @param t The simulation time.
+     * @param e The reference energy.
+     * @param n The number of walkers.
+     * @param e0 The running E0 estimate, or NaN for none.
+     */
+    public void addPoint(double t, double e, double n, double e0)
+    {
+	if (numPoints == MAX_POINTS)
+	    thin();
+	if (numPoints == tauPoints.length) {
+	    tauPoints = grow(tauPoints);
+	    refEnergyPoints = grow(refEnergyPoints);
+	    numWalkersPoints = grow(numWalkersPoints);
+	    e0Points = grow(e0Points);
+	}
+	tauPoints[numPoints] = t;
+	refEnergyPoints[numPoints] = e;
+	numWalkersPoints[numPoints] = n;
+	e0Points[numPoints++] = e0;
+    }
+
+    /**
+     * Drops every other point, keeping the last.
+     */
+    private void thin()
+    {
+	int m = 0;
+	for (int i = numPoints % 2 == 0 ? 1 : 0; i < numPoints; i += 2, m++) {
+	    tauPoints[m] = tauPoints[i];
+	    refEnergyPoints[m] = refEnergyPoints[i];
+	    numWalkersPoints[m] = numWalkersPoints[i];
+	    e0Points[m] = e0Points[i];
+	}
+	numPoints = m;
+    }
+
+    /**
+     * Drops the points, once they have been added to the data graphs.
+     */
+    public void clearPoints()
+    {
+	numPoints = 0;
+    }
+
+    /**
+     * Returns a copy of an array twice as long.
+     *
+     * @param a The array.
+     * @return the longer copy
+     */
+    private static double[] grow(double[] a)
+    {
+	double[] b = new double[2 * a.length];
+	System.arraycopy(a, 0, b, 0, a.length);
+	return b;
+    }
+}